@@ -15,8 +15,15 @@ public class Demo {
     public static void main(String[] args) {
         //创建一个CommandWindow实例并显示出来
         window = new CommandWindow().setVisible();
-        //监听每一次用户提交的输入并交由Analysable对象处理
-        window.setOnSubmitListener((content -> System.out.println(analyzer.process(content))));
+        //监听每一次用户提交的输入并交由Analysable对象异步处理，耗时的处理函数不会卡住界面
+        //处理完之后窗口才补上提示符，命令的输出不会出现在提示符之后
+        window.setOnSubmitListener(content -> {
+            Runnable done = window.deferHint();
+            analyzer.processAsync(content).whenComplete((result, e) -> {
+                if (result != null) System.out.println(result.isHandled());
+                done.run();
+            });
+        });
 
         //绑定命令的处理函数所在的类的实例，可以是多个
         analyzer = FastAnalyzer.handleWith(new Demo());
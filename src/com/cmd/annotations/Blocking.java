@@ -0,0 +1,24 @@
+package com.cmd.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标明一个处理函数会长时间阻塞，如读写文件、访问网络、等待用户操作等
+ * 通过{@code Analysable#processAsync(String)}异步处理命令时，这样的处理函数会在阻塞任务专用的执行器中调用，
+ * 默认是每个任务一个虚拟线程(运行环境不支持虚拟线程时为按需创建的线程池)，不会占用计算任务的线程
+ * 可通过{@code CommandAnalyzer#setBlockingExecutor(Executor)}替换
+ * <p>
+ * 不能与{@code CpuBound}或{@code OnCallerThread}同时使用
+ *
+ * @version 2.5
+ * @see CpuBound
+ * @see OnCallerThread
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Blocking {
+
+}
@@ -0,0 +1,24 @@
+package com.cmd.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标明一个处理函数主要在做计算，不会阻塞
+ * 通过{@code Analysable#processAsync(String)}异步处理命令时，这样的处理函数会在计算任务专用的执行器中调用，
+ * 默认是{@code ForkJoinPool#commonPool()}，线程数与CPU核数相当
+ * 可通过{@code CommandAnalyzer#setCpuBoundExecutor(Executor)}替换
+ * <p>
+ * 不能与{@code Blocking}或{@code OnCallerThread}同时使用
+ *
+ * @version 2.5
+ * @see Blocking
+ * @see OnCallerThread
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CpuBound {
+
+}
@@ -0,0 +1,24 @@
+package com.cmd.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标明一个处理函数必须在提交命令的线程中调用
+ * 通过{@code Analysable#processAsync(String)}异步处理命令时，这样的处理函数会在processAsync返回之前被调用完，
+ * 返回的是一个已经完成的CompletableFuture
+ * 适用于非常快的处理函数，或者像操作Swing组件这样必须在特定线程(事件分发线程)中完成的处理函数
+ * <p>
+ * 不能与{@code Blocking}或{@code CpuBound}同时使用
+ *
+ * @version 2.5
+ * @see Blocking
+ * @see CpuBound
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OnCallerThread {
+
+}
@@ -0,0 +1,31 @@
+package com.cmd.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 多个线程同时处理命令时(如通过{@code Analysable#processAsync(String)})，同一个处理函数可能会被同时调用
+ * 对于持有可变状态的处理函数所在的类，如{@code CommandWindowHandler}，这样是不安全的
+ * <p>
+ * 标注在类上时，这个类(及其子类)的每一个实例中的所有处理函数都不会被同时调用，同一个实例中的处理函数依次执行
+ * 标注在处理函数上时，只有标注了的处理函数参与互斥，它们之间同样以所在的实例为单位依次执行
+ * <p>
+ * 互斥只发生在同一个实例之内，不同实例(即使是同一个类的)中的处理函数、没有标注的处理函数依然可以同时调用
+ * 每个实例使用自己的一把可重入锁，所以处理函数中再处理同一个实例中的其他命令不会死锁
+ * <p>
+ * 在事件分发线程中调用的处理函数(标有{@code OnCallerThread}，由窗口提交的命令)不要与在执行器中调用的处理函数共用一把锁，
+ * 即同一个实例中参与互斥的处理函数要么都标有OnCallerThread，要么都没有
+ * 否则事件分发线程会等待执行器中的处理函数释放锁，而执行器中的处理函数向CommandWindow大量输出时
+ * 又要等待事件分发线程把输出显示出来，两者会互相等待
+ *
+ * @version 2.5
+ */
+@Inherited
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Serialized {
+
+}
@@ -0,0 +1,62 @@
+package com.cmd.core;
+
+import java.lang.management.ManagementFactory;
+
+import com.cmd.annotations.CommandName;
+
+/**
+ * 检查FastAnalyzer查找命令时不创建任何对象
+ * 预热之后在当前线程中对一个无参命令调用若干次{@code FastAnalyzer#lookup(CharSequence)}，
+ * 通过{@code com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}统计这期间当前线程分配的字节数，
+ * 不为0时抛出异常，同时输出analyze(CharSequence)每次调用分配的字节数作为参考
+ * <pre>
+ * java com.cmd.core.AllocationCheck [调用次数]
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class AllocationCheck {
+
+    @CommandName
+    public void status() {
+    }
+
+    public static void main(String[] args) {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("thread allocation counting is not supported by this JVM");
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        FastAnalyzer analyzer = FastAnalyzer.handleWith(new AllocationCheck());
+        CharSequence content = new StringBuilder("status");
+
+        //预热，让lookup被编译
+        for (int i = 0; i < calls; i++) lookup(analyzer, content);
+        long thread = Thread.currentThread().getId();
+        //两次读取之间本身可能分配少量字节，先测出这部分再扣除
+        long before = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - before;
+        before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < calls; i++) lookup(analyzer, content);
+        long lookupBytes = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+        for (int i = 0; i < calls; i++) analyzer.analyze(content);
+        before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < calls; i++) analyzer.analyze(content);
+        long analyzeBytes = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+        System.out.printf("lookup: %d bytes in %d calls%n", lookupBytes, calls);
+        System.out.printf("analyze: %d bytes in %d calls, %.1f bytes/call%n",
+                analyzeBytes, calls, (double) analyzeBytes / calls);
+        if (lookupBytes != 0) {
+            throw new IllegalStateException("lookup allocated " + lookupBytes + " bytes, expected 0");
+        }
+    }
+
+    private static void lookup(FastAnalyzer analyzer, CharSequence content) {
+        if (analyzer.lookup(content) == null) throw new IllegalStateException("command not found: " + content);
+    }
+}
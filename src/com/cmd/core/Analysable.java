@@ -1,7 +1,12 @@
 package com.cmd.core;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * 实现此接口的类代表着拥有通过框架流程处理一条用户输入的能力
@@ -12,7 +17,7 @@ import java.util.function.Consumer;
  * 其他方法用途见方法注释
  *
  * 
- * @version　2.4
+ * @version　2.5
  * @author congxiaoyao
  * @date 2016.1.24
  */
@@ -25,6 +30,48 @@ public interface Analysable {
 	 */
 	boolean process(String content);
 
+	/**
+	 * 与{@code #process(String)}相同，接受任意的字符序列作为输入，如直接指向网络缓冲区中的命令
+	 * @param content 用户输入，在处理完成之前不能被修改
+	 * @return 处理成功true 否则false
+	 */
+	boolean process(CharSequence content);
+
+	/**
+	 * 异步的解析并处理一条用户输入，处理函数在哪个执行器中调用由它上面的注解决定
+	 * 见{@code com.cmd.annotations.Blocking}、{@code com.cmd.annotations.CpuBound}、
+	 * {@code com.cmd.annotations.OnCallerThread}，没有标注的处理函数在默认执行器中调用
+	 * 一行中有多条命令时，这些命令依然按顺序一条接一条的处理
+	 * @param content 用户输入
+	 * @return 处理完成时给出处理结果的CompletableFuture
+	 */
+	CompletableFuture<DispatchResult> processAsync(String content);
+
+	/**
+	 * 依次处理多行用户输入，每一行可以包含多条由命令分隔符分开的命令
+	 * 整批输入在同一个线程中处理，分词用的缓冲区等在各行之间重复使用
+	 * @param lines 用户输入，每个元素为一行
+	 * @return 每一行的处理结果，一行中的所有命令都处理成功才为true
+	 */
+	boolean[] processAll(Iterable<? extends CharSequence> lines);
+
+	/**
+	 * 逐行读取并处理reader中的内容，处理方式同{@code #processAll(Iterable)}
+	 * reader不会被关闭
+	 * @param reader 输入来源
+	 * @return 每一行的处理结果
+	 * @throws IOException 读取失败
+	 */
+	boolean[] process(Reader reader) throws IOException;
+
+	/**
+	 * 以UTF-8编码逐行读取并处理一个文件，处理方式同{@code #processAll(Iterable)}
+	 * @param path 命令脚本的路径
+	 * @return 每一行的处理结果
+	 * @throws IOException 读取失败
+	 */
+	boolean[] process(Path path) throws IOException;
+
 	/**
 	 * @return 命令的集合
 	 */
@@ -37,6 +84,13 @@ public interface Analysable {
      */
     void removeCommand(Command command);
 
+    /**
+     * 从所有命令中移除符合条件的处理函数，整个移除操作对其他线程来说是一次性完成的
+     * @param filter 返回true的处理函数将被移除
+     * @return 因此失去了所有处理函数的命令
+     */
+    List<Command> removeHandlingMethods(Predicate<HandlingMethod> filter);
+
 	/**
 	 * @return 所有命令的描述信息整理成String的形式返回
 	 */
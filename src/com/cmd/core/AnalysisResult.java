@@ -0,0 +1,124 @@
+package com.cmd.core;
+
+/**
+ * 一次分析的结果，Analysable每分析一条用户输入都会生成一个新的AnalysisResult对象
+ * 其中保存了匹配到的Command对象以及从用户输入中解析出来的参数，二者在构造完成后便不可更改
+ * <p>
+ * 注册在解析器中的Command对象是所有线程共享的，如果把参数写回Command中，
+ * 多个线程同时调用{@code Analysable#process(String)}时就会互相覆盖对方的参数
+ * 所以参数不再保存在Command中，而是随着分析结果一同交给{@code CommandAnalyzer#handleCommand(AnalysisResult)}
+ * 这样同一个解析器就可以同时服务于多个线程而不需要额外加锁
+ * <p>
+ * 参数可以在构造时直接给出，也可以交给{@code ParameterParser}在第一次需要时才从用户输入中解析出来
+ * 对于无参命令或者最终没有处理函数需要参数的情况，就不必为参数创建任何对象
+ * 延迟解析时用户输入在命令处理完成之前不能被修改
+ * <p>
+ * 如果分析时已经确定了子命令(见{@code DispatchTable#route(String)})，分析结果中还会带有子命令的路由，
+ * 分发时直接使用路由筛选后的分发表
+ *
+ * @version 2.5
+ */
+public final class AnalysisResult {
+
+    private static final String[] NO_PARAMETERS = new String[0];
+
+    private final Command command;          //匹配到的命令，是解析器中注册的那个对象
+    private final CharSequence content;     //用户输入，延迟解析参数时使用
+    private final ParameterParser parser;   //延迟解析参数时使用，参数已经给出时为null
+    private final String route;             //子命令路由的键，没有确定子命令时为null
+    private volatile String[] parameters;   //从用户输入中解析出来的参数，没有参数时长度为0
+
+    public AnalysisResult(Command command, String[] parameters) {
+        this.command = command;
+        this.content = null;
+        this.parser = null;
+        this.route = null;
+        this.parameters = parameters == null ? NO_PARAMETERS : parameters;
+    }
+
+    /**
+     * 构造一个延迟解析参数的分析结果
+     * @param command 匹配到的命令
+     * @param content 用户输入，在命令处理完成之前不能被修改
+     * @param parser 从用户输入中解析参数的方法
+     * @param route 子命令路由的键，没有确定子命令时为null
+     */
+    AnalysisResult(Command command, CharSequence content, ParameterParser parser, String route) {
+        this.command = command;
+        this.content = content;
+        this.parser = parser;
+        this.route = route;
+    }
+
+    /**
+     * @return 分发这次调用时使用的分发表
+     */
+    DispatchTable dispatchTable() {
+        DispatchTable table = command.getDispatchTable();
+        return route == null ? table : table.route(route);
+    }
+
+    /**
+     * @return 解析出来的参数，第一次调用时才真正去解析，返回的数组请不要修改
+     */
+    String[] parameters() {
+        String[] result = parameters;
+        if (result == null) {
+            result = parser.parse(command, content);
+            if (result == null) result = NO_PARAMETERS;
+            parameters = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return 匹配到的命令，注意这是所有线程共享的对象，请不要修改它
+     */
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * @return 解析出来的参数的拷贝，没有参数时返回长度为0的数组
+     */
+    public String[] getParameters() {
+        return parameters().clone();
+    }
+
+    /**
+     * @return 解析出来的参数的个数
+     */
+    public int getParameterCount() {
+        return parameters().length;
+    }
+
+    /**
+     * 对于参数类型为Command的处理函数，需要一个带有本次调用参数的Command对象
+     * 这里生成一个只属于本次调用的Command，与注册的Command共享处理函数，但参数是独立的
+     * @return 只属于本次调用的Command对象
+     */
+    public Command toCommand() {
+        return new Command(command, parameters());
+    }
+
+    @Override
+    public String toString() {
+        return "AnalysisResult{" +
+                "command=" + command +
+                ", parameterCount=" + parameters().length +
+                '}';
+    }
+
+    /**
+     * 从用户输入中解析出某条命令的参数
+     */
+    interface ParameterParser {
+
+        /**
+         * @param command 已经确定用户输入是这条命令
+         * @param content 用户输入
+         * @return 解析出来的参数，没有参数可以返回null
+         */
+        String[] parse(Command command, CharSequence content);
+    }
+}
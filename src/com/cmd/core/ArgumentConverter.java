@@ -0,0 +1,57 @@
+package com.cmd.core;
+
+/**
+ * 参数转换器，把用户输入的一个参数转换为处理函数所需的类型
+ * 通过{@code CommandAnalyzer#registerConverter(Class, ArgumentConverter)}注册之后，
+ * 处理函数的参数就可以直接声明为对应的类型，如
+ * <pre>
+ * CommandAnalyzer.registerConverter(Color.class, new ArgumentConverter&lt;Color&gt;() {
+ *     public boolean accepts(CharSequence s, int start, int end) {
+ *         return end - start == 7 &amp;&amp; s.charAt(start) == '#';
+ *     }
+ *     public Color convert(CharSequence s, int start, int end) {
+ *         return Color.decode(s.subSequence(start, end).toString());
+ *     }
+ * });
+ *
+ * <code>@CmdDef</code>
+ * public void background(Color color) {
+ *     ...
+ * }
+ * </pre>
+ * 转换分为两步，分发时先通过{@code #accepts}检查参数能否转换，能转换的才会交给{@code #convert}，
+ * 所以请在accepts中完成所有的检查而不是依靠convert抛出异常，这样输错参数的代价与输对参数相同
+ * <p>
+ * 转换器在处理函数注册时就被确定下来，之后注册的转换器不会影响已经注册的处理函数
+ * 转换器会被多个线程同时使用，请保证它是无状态的或者是线程安全的
+ *
+ * @param <T> 转换的结果类型
+ * @version 2.5
+ */
+public interface ArgumentConverter<T> {
+
+    /**
+     * @param s 用户输入
+     * @param start 参数的起始位置
+     * @param end 参数的结束位置(不包含)
+     * @return 这一段能否转换为T，不应抛出异常
+     */
+    boolean accepts(CharSequence s, int start, int end);
+
+    /**
+     * @param s 用户输入
+     * @param start 参数的起始位置
+     * @param end 参数的结束位置(不包含)
+     * @return 转换的结果，只有accepts返回true的参数才会被传入
+     */
+    T convert(CharSequence s, int start, int end);
+
+    /**
+     * 转换整个字符序列
+     * @param s 已经通过accepts检查的参数
+     * @return 转换的结果
+     */
+    default T convert(CharSequence s) {
+        return convert(s, 0, s.length());
+    }
+}
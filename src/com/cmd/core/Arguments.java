@@ -0,0 +1,416 @@
+package com.cmd.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cmd.utils.CharParsers;
+
+/**
+ * 处理函数参数的类型转换，维护着参数类型到{@code ArgumentConverter}的映射
+ * <p>
+ * 以前每个参数都要先通过typesMap找到StringParser，把String解析成包装类型的Object，放进Object数组，
+ * 调用时再拆箱，非法输入则通过捕获NumberFormatException来发现
+ * 现在绑定处理函数时就为每个参数确定好转换器，分发时只通过转换器的accepts检查能否转换，
+ * 真正的转换由{@code #parser(Class, ArgumentConverter)}提供的MethodHandle完成，
+ * 它被直接拼接在处理函数的MethodHandle之前，所以基本数据类型的参数从字符解析出来之后直接传给处理函数，
+ * 既不会装箱，也不需要Object数组
+ * <p>
+ * 内置的转换器支持String、基本数据类型及其包装类型、BigInteger、BigDecimal、Path、Duration以及所有的枚举类型
+ * 其他类型可以通过{@code CommandAnalyzer#registerConverter(Class, ArgumentConverter)}注册
+ *
+ * @version 2.5
+ */
+final class Arguments {
+
+    private static final Map<Class<?>, ArgumentConverter<?>> converters = new ConcurrentHashMap<>();
+
+    private static final MethodHandle CONVERT;      //ArgumentConverter#convert(CharSequence)
+
+    static {
+        try {
+            CONVERT = MethodHandles.publicLookup().findVirtual(ArgumentConverter.class, "convert",
+                    MethodType.methodType(Object.class, CharSequence.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        converters.put(String.class, new ArgumentConverter<String>() {
+            @Override
+            public boolean accepts(CharSequence s, int start, int end) {
+                return true;
+            }
+
+            @Override
+            public String convert(CharSequence s, int start, int end) {
+                return s.subSequence(start, end).toString();
+            }
+        });
+        primitive(boolean.class, Boolean.class, "parseBoolean", CharParsers::isBoolean);
+        primitive(char.class, Character.class, "parseChar", CharParsers::isChar);
+        primitive(byte.class, Byte.class, "parseByte", CharParsers::isByte);
+        primitive(short.class, Short.class, "parseShort", CharParsers::isShort);
+        primitive(int.class, Integer.class, "parseInt", CharParsers::isInt);
+        primitive(long.class, Long.class, "parseLong", CharParsers::isLong);
+        primitive(float.class, Float.class, "parseFloat", CharParsers::isFloat);
+        primitive(double.class, Double.class, "parseDouble", CharParsers::isDouble);
+        converters.put(BigInteger.class, new ArgumentConverter<BigInteger>() {
+            @Override
+            public boolean accepts(CharSequence s, int start, int end) {
+                return CharParsers.isBigInteger(s, start, end);
+            }
+
+            @Override
+            public BigInteger convert(CharSequence s, int start, int end) {
+                return new BigInteger(s.subSequence(start, end).toString());
+            }
+        });
+        converters.put(BigDecimal.class, new ArgumentConverter<BigDecimal>() {
+            @Override
+            public boolean accepts(CharSequence s, int start, int end) {
+                return CharParsers.isBigDecimal(s, start, end);
+            }
+
+            @Override
+            public BigDecimal convert(CharSequence s, int start, int end) {
+                return new BigDecimal(s.subSequence(start, end).toString());
+            }
+        });
+        converters.put(Path.class, new ArgumentConverter<Path>() {
+            //空串及含有'\0'的路径在任何平台上都不合法，其他平台相关的检查交给Paths
+            @Override
+            public boolean accepts(CharSequence s, int start, int end) {
+                if (start >= end) return false;
+                for (int i = start; i < end; i++) {
+                    if (s.charAt(i) == '\0') return false;
+                }
+                return true;
+            }
+
+            @Override
+            public Path convert(CharSequence s, int start, int end) {
+                return Paths.get(s.subSequence(start, end).toString());
+            }
+        });
+        converters.put(Duration.class, new DurationConverter());
+    }
+
+    private Arguments() {
+    }
+
+    /**
+     * 注册一个转换器，已经注册的同类型转换器将被替换
+     * @param type
+     * @param converter
+     */
+    static <T> void register(Class<T> type, ArgumentConverter<? extends T> converter) {
+        if (type.isPrimitive() || type == String.class) {
+            throw new IllegalArgumentException("内置类型的转换器不能被替换 " + type.getName());
+        }
+        converters.put(type, converter);
+    }
+
+    /**
+     * @param type 处理函数的参数类型
+     * @return 对应的转换器，枚举类型在第一次用到时生成转换器，不支持的类型返回null
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static ArgumentConverter<?> converterFor(Class<?> type) {
+        ArgumentConverter<?> converter = converters.get(type);
+        if (converter == null && type.isEnum()) {
+            converter = converters.computeIfAbsent(type, enumType -> new EnumConverter(enumType));
+        }
+        return converter;
+    }
+
+    /**
+     * @param type 处理函数的参数类型
+     * @param converter type对应的转换器
+     * @return 把已经检查过的String转换成type的MethodHandle，类型为(String)type，String类型不需要转换返回null
+     */
+    static MethodHandle parser(Class<?> type, ArgumentConverter<?> converter) {
+        if (type == String.class) return null;
+        //基本数据类型直接调用CharParsers中的函数，包装类型在这里装箱，基本数据类型则原样传递
+        if (converter instanceof PrimitiveConverter) {
+            return ((PrimitiveConverter) converter).handle.asType(MethodType.methodType(type, String.class));
+        }
+        return CONVERT.bindTo(converter).asType(MethodType.methodType(type, String.class));
+    }
+
+    private static void primitive(Class<?> primitive, Class<?> wrapper, String name, RangePredicate validator) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findStatic(CharParsers.class, name,
+                    MethodType.methodType(primitive, CharSequence.class));
+            PrimitiveConverter converter = new PrimitiveConverter(validator, handle);
+            converters.put(primitive, converter);
+            converters.put(wrapper, converter);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private interface RangePredicate {
+        boolean test(CharSequence s, int start, int end);
+    }
+
+    /**
+     * 基本数据类型及其包装类型的转换器，分发时直接使用handle，不经过convert
+     */
+    private static final class PrimitiveConverter implements ArgumentConverter<Object> {
+
+        private final RangePredicate validator;
+        final MethodHandle handle;      //(CharSequence)primitive
+
+        PrimitiveConverter(RangePredicate validator, MethodHandle handle) {
+            this.validator = validator;
+            this.handle = handle;
+        }
+
+        @Override
+        public boolean accepts(CharSequence s, int start, int end) {
+            return validator.test(s, start, end);
+        }
+
+        @Override
+        public Object convert(CharSequence s, int start, int end) {
+            try {
+                return handle.invoke(s.subSequence(start, end));
+            } catch (Throwable e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    /**
+     * 枚举类型的转换器，按照常量名精确匹配
+     * <p>
+     * 构建时为所有常量名寻找一个乘数seed，使得(hash * seed) >>> shift对于每个常量名都不相同，
+     * 这样查找时只需计算一次散列、比较一次字符即可，不需要像Enum.valueOf那样通过异常来报告不存在的常量
+     * 有常量名的散列值相同(如Aa与BB)时任何乘数都无法把它们分开，尝试{@code #MAX_EXTRA_BITS}次扩大表之后
+     * 改为线性探测，查找时向后比较直到遇到空位
+     */
+    private static final class EnumConverter<E extends Enum<E>> implements ArgumentConverter<E> {
+
+        //寻找完美散列时表最多扩大的次数
+        private static final int MAX_EXTRA_BITS = 2;
+        private static final int ATTEMPTS = 256;
+        private static final int SEED = 0x9E3779B1;
+
+        private final E[] table;
+        private final int seed;
+        private final int shift;
+        private final boolean probing;
+
+        EnumConverter(Class<E> type) {
+            E[] constants = type.getEnumConstants();
+            int minBits = 1;
+            while ((1 << minBits) < constants.length * 2) minBits++;
+            //表越大越容易找到完美散列，每扩大一次表尝试一批乘数
+            for (int bits = minBits; bits <= minBits + MAX_EXTRA_BITS; bits++) {
+                E[] table = Arrays.copyOf(constants, 1 << bits);
+                for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+                    int seed = SEED + attempt * 2;
+                    Arrays.fill(table, null);
+                    if (fill(table, constants, seed, 32 - bits)) {
+                        this.table = table;
+                        this.seed = seed;
+                        this.shift = 32 - bits;
+                        this.probing = false;
+                        return;
+                    }
+                }
+            }
+            //表的大小至少是常量数的两倍，探测时一定会遇到空位
+            E[] table = Arrays.copyOf(constants, 1 << minBits);
+            Arrays.fill(table, null);
+            int mask = table.length - 1;
+            for (E constant : constants) {
+                String name = constant.name();
+                int slot = slot(hash(name, 0, name.length()), SEED, 32 - minBits);
+                while (table[slot] != null) slot = (slot + 1) & mask;
+                table[slot] = constant;
+            }
+            this.table = table;
+            this.seed = SEED;
+            this.shift = 32 - minBits;
+            this.probing = true;
+        }
+
+        private static <E extends Enum<E>> boolean fill(E[] table, E[] constants, int seed, int shift) {
+            for (E constant : constants) {
+                String name = constant.name();
+                int slot = slot(hash(name, 0, name.length()), seed, shift);
+                if (table[slot] != null) return false;
+                table[slot] = constant;
+            }
+            return true;
+        }
+
+        private static int hash(CharSequence s, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + s.charAt(i);
+            }
+            return hash;
+        }
+
+        private static int slot(int hash, int seed, int shift) {
+            return (hash * seed) >>> shift;
+        }
+
+        private E find(CharSequence s, int start, int end) {
+            int mask = table.length - 1;
+            for (int slot = slot(hash(s, start, end), seed, shift); ; slot = (slot + 1) & mask) {
+                E constant = table[slot];
+                if (constant == null) return null;
+                if (CharParsers.regionEquals(s, start, end, constant.name())) return constant;
+                if (!probing) return null;
+            }
+        }
+
+        @Override
+        public boolean accepts(CharSequence s, int start, int end) {
+            return find(s, start, end) != null;
+        }
+
+        @Override
+        public E convert(CharSequence s, int start, int end) {
+            return find(s, start, end);
+        }
+    }
+
+    /**
+     * Duration的转换器，支持两种写法
+     * <ul>
+     * <li>数字加单位，单位可以是ns、us、ms、s、m、h、d，如500ms、10s、2h
+     * <li>ISO-8601格式，如PT15M、P1DT2H、PT0.5S，交给Duration.parse解析
+     * </ul>
+     * 换算成秒之后超出long范围的时长在accepts中就被拒绝，convert不会抛出ArithmeticException
+     */
+    private static final class DurationConverter implements ArgumentConverter<Duration> {
+
+        //ISO-8601格式中D、H、M、S对应的秒数
+        private static final long[] UNIT_SECONDS = {86400, 3600, 60, 1};
+
+        @Override
+        public boolean accepts(CharSequence s, int start, int end) {
+            if (isIsoLike(s, start, end)) return isIso(s, start, end);
+            int unit = unitStart(s, start, end);
+            if (unit == -1 || !CharParsers.isLong(s, start, unit)) return false;
+            ChronoUnit chronoUnit = unitOf(s, unit, end);
+            if (chronoUnit == null) return false;
+            long seconds = chronoUnit.getDuration().getSeconds();
+            if (seconds <= 1) return true;
+            long amount = CharParsers.parseLong(s, start, unit);
+            return amount >= Long.MIN_VALUE / seconds && amount <= Long.MAX_VALUE / seconds;
+        }
+
+        @Override
+        public Duration convert(CharSequence s, int start, int end) {
+            if (isIsoLike(s, start, end)) return Duration.parse(s.subSequence(start, end));
+            int unit = unitStart(s, start, end);
+            long amount = CharParsers.parseLong(s, start, unit);
+            return Duration.of(amount, unitOf(s, unit, end));
+        }
+
+        /**
+         * @return 去掉正负号之后以P开头的认为是ISO-8601格式
+         */
+        private static boolean isIsoLike(CharSequence s, int start, int end) {
+            int i = start;
+            if (i < end && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
+            return i < end && Character.toUpperCase(s.charAt(i)) == 'P';
+        }
+
+        /**
+         * @return 数字之后第一个字母的位置，没有字母返回-1
+         */
+        private static int unitStart(CharSequence s, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = s.charAt(i);
+                if (c >= 'a' && c <= 'z') return i;
+            }
+            return -1;
+        }
+
+        private static ChronoUnit unitOf(CharSequence s, int start, int end) {
+            if (CharParsers.regionEquals(s, start, end, "ns")) return ChronoUnit.NANOS;
+            if (CharParsers.regionEquals(s, start, end, "us")) return ChronoUnit.MICROS;
+            if (CharParsers.regionEquals(s, start, end, "ms")) return ChronoUnit.MILLIS;
+            if (CharParsers.regionEquals(s, start, end, "s")) return ChronoUnit.SECONDS;
+            if (CharParsers.regionEquals(s, start, end, "m")) return ChronoUnit.MINUTES;
+            if (CharParsers.regionEquals(s, start, end, "h")) return ChronoUnit.HOURS;
+            if (CharParsers.regionEquals(s, start, end, "d")) return ChronoUnit.DAYS;
+            return null;
+        }
+
+        /**
+         * 检查ISO-8601格式：[+-]P[数字D][T[数字H][数字M][数字[.小数]S]]，至少有一项，数字可以带符号
+         * 同时累加各项换算成的秒数，超出long的范围时Duration.parse会失败，这里同样返回false
+         */
+        private static boolean isIso(CharSequence s, int start, int end) {
+            int i = start;
+            if (s.charAt(i) == '+' || s.charAt(i) == '-') i++;
+            if (i == end || Character.toUpperCase(s.charAt(i)) != 'P') return false;
+            i++;
+            int parts = 0;
+            int timeParts = 0;
+            boolean time = false;
+            String units = "DHMS";
+            int lastUnit = -1;
+            long total = 0;
+            while (i < end) {
+                char c = Character.toUpperCase(s.charAt(i));
+                if (c == 'T') {
+                    if (time) return false;
+                    time = true;
+                    i++;
+                    continue;
+                }
+                int numberStart = i;
+                if (c == '+' || c == '-') i++;
+                int digits = 0;
+                while (i < end && CharParsers.isDigit(s.charAt(i))) {
+                    i++;
+                    digits++;
+                }
+                if (digits == 0 || digits > 18) return false;
+                long number = CharParsers.parseLong(s, numberStart, i);
+                if (i < end && (s.charAt(i) == '.' || s.charAt(i) == ',')) {
+                    i++;
+                    int fraction = 0;
+                    while (i < end && CharParsers.isDigit(s.charAt(i))) {
+                        i++;
+                        fraction++;
+                    }
+                    if (fraction > 9 || i == end || Character.toUpperCase(s.charAt(i)) != 'S') return false;
+                }
+                if (i == end) return false;
+                int unit = units.indexOf(Character.toUpperCase(s.charAt(i)));
+                //D只能出现在T之前，H、M、S只能出现在T之后，且顺序不能颠倒
+                if (unit == -1 || unit <= lastUnit || (unit == 0) == time || numberStart == i) return false;
+                lastUnit = unit;
+                //不超过18位的数字乘以86400可能溢出，先检查
+                long factor = UNIT_SECONDS[unit];
+                if (number > Long.MAX_VALUE / factor || number < -Long.MAX_VALUE / factor) return false;
+                long value = number * factor;
+                long sum = total + value;
+                if (((total ^ sum) & (value ^ sum)) < 0) return false;
+                total = sum;
+                parts++;
+                if (time) timeParts++;
+                i++;
+            }
+            //T之后至少要有一项，小数部分为负时还要再借一秒、整体的负号还要对结果取反，所以两端各留一点余量
+            return parts > 0 && (!time || timeParts > 0) && Math.abs(total) < Long.MAX_VALUE - 1;
+        }
+    }
+}
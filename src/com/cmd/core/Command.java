@@ -3,14 +3,19 @@ package com.cmd.core;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * 命令以Command对象的形式进行管理，可由commandName、delimiter两个字段唯一确定一个Command对象
  * 一般来说Command对象由CommandAnalyzer根据注解及处理函数等信息构造
  * Command中保存了处理这条命令的处理函数的集合，以便CommandAnalyzer分析调用
+ * <p>
+ * 处理函数的集合是写时复制的，任何修改都会生成一个新的只读集合并整体替换旧的集合
+ * 所以{@code #getHandlingMethods()}返回的集合可以放心遍历，不会因为其他线程的修改而抛出异常
+ * 每次替换处理函数的集合时都会同时构建好新的分发表{@code DispatchTable}，分发命令时不必再逐个遍历处理函数
  *
  * @author congxiaoyao
- * @version 2.0
+ * @version 2.5
  * @date 2016.1.19
  */
 
@@ -18,9 +23,11 @@ public class Command {
 
     public String commandName;
     public String delimiter;
+    //只有通过AnalysisResult#toCommand()生成的Command才会携带参数，注册在解析器中的Command永远为null
     public String[] parameters;
 
-    private List<HandlingMethod> handlingMethods;
+    //只读的处理函数集合及由它构建的分发表，修改时整体替换
+    private volatile DispatchTable dispatchTable;
 
     /**
      * 这里强制规定了一条命令的格式 形如：[commandName][delimiter][parameter][delimiter][parameter]...
@@ -30,13 +37,25 @@ public class Command {
     public Command(String commandName, String delimiter) {
         this.commandName = commandName;
         this.delimiter = delimiter;
-        handlingMethods = new ArrayList<>(1);
+        dispatchTable = DispatchTable.EMPTY;
     }
 
     public Command(String commandName) {
         this(commandName, " ");
     }
 
+    /**
+     * 生成一个只属于某一次调用的Command，与registered共享处理函数，但携带着本次调用自己的参数
+     * @param registered 注册在解析器中的Command
+     * @param parameters 本次调用的参数
+     */
+    Command(Command registered, String[] parameters) {
+        this.commandName = registered.commandName;
+        this.delimiter = registered.delimiter;
+        this.dispatchTable = registered.dispatchTable;
+        this.parameters = parameters;
+    }
+
     /**
      * 判断这条命令是否是一条无参命令
      * 无参命令的判定是根据其所持有的所有的HandlingMethod的参数个数判定的
@@ -44,6 +63,7 @@ public class Command {
      * @throws NoneHandlingMethodException
      */
     public boolean isNullParamCommand() throws NoneHandlingMethodException {
+        List<HandlingMethod> handlingMethods = getHandlingMethods();
         if (handlingMethods.size() == 0) {
             throw new NoneHandlingMethodException(toString());
         }
@@ -75,29 +95,74 @@ public class Command {
     }
 
     /**
-     * @return 所有备选的HandlingMethod
+     * 生成一个与此命令有着相同命令名、分隔符及处理函数的新Command对象
+     * 解析器在修改命令注册表时先复制再修改，保证已经发布的Command不会被改动
+     * @return 此命令的拷贝
+     */
+    Command copy() {
+        Command command = new Command(commandName, delimiter);
+        command.dispatchTable = dispatchTable;
+        return command;
+    }
+
+    /**
+     * @return 所有备选的HandlingMethod，是一个只读的快照，修改请通过本类提供的方法
      */
     public List<HandlingMethod> getHandlingMethods() {
-        return handlingMethods;
+        return dispatchTable.getHandlingMethods();
+    }
+
+    /**
+     * @return 与{@code #getHandlingMethods()}对应的分发表
+     */
+    DispatchTable getDispatchTable() {
+        return dispatchTable;
+    }
+
+    /**
+     * 用新的处理函数集合整体替换旧的集合，同时构建新的分发表
+     * @param methods
+     */
+    private void setHandlingMethods(List<HandlingMethod> methods) {
+        dispatchTable = new DispatchTable(Collections.unmodifiableList(methods));
     }
 
     /**
      * 添加一个处理函数
      * @param method
      */
-    public void addHandlingMethod(HandlingMethod method) throws IllegalHandlingMethodException {
+    public synchronized void addHandlingMethod(HandlingMethod method) throws IllegalHandlingMethodException {
         if (!method.isLegal()) {
             throw new IllegalHandlingMethodException(method.method.toString());
         }
-        handlingMethods.add(method);
+        List<HandlingMethod> handlingMethods = getHandlingMethods();
+        List<HandlingMethod> methods = new ArrayList<>(handlingMethods.size() + 1);
+        methods.addAll(handlingMethods);
+        methods.add(method);
+        setHandlingMethods(methods);
+    }
+
+    /**
+     * 移除所有符合条件的处理函数
+     * @param filter 返回true的处理函数将被移除
+     * @return 如果有处理函数被移除返回true
+     */
+    public synchronized boolean removeHandlingMethods(Predicate<HandlingMethod> filter) {
+        List<HandlingMethod> methods = new ArrayList<>(getHandlingMethods());
+        if (!methods.removeIf(filter)) return false;
+        setHandlingMethods(methods);
+        return true;
     }
 
     /**
      * 给类内维护的HandlingMethods按照OnlyCare的数量由多到少排序
+     * 已经注册到解析器中的命令请通过{@code CommandAnalyzer#sortHandlingMethods()}排序，它会在拷贝上排序后重新发布
      */
-    public void sortHandlingMethod() {
-        Collections.sort(handlingMethods, (method1, method2)->
+    public synchronized void sortHandlingMethod() {
+        List<HandlingMethod> methods = new ArrayList<>(getHandlingMethods());
+        Collections.sort(methods, (method1, method2)->
                 method2.getOnlyCareCount() - method1.getOnlyCareCount());
+        setHandlingMethods(methods);
     }
 
     /**
@@ -1,14 +1,30 @@
 package com.cmd.core;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import com.cmd.annotations.CmdDef;
 import com.cmd.annotations.CommandName;
@@ -16,6 +32,7 @@ import com.cmd.annotations.Delimiter;
 import com.cmd.annotations.Description;
 import com.cmd.annotations.Outline;
 import com.cmd.utils.CmdUtils;
+import com.cmd.utils.Tokens;
 
 /**
  * 在这个类里解释一下这一整套所谓的框架的工作原理及使用方法
@@ -75,6 +92,8 @@ import com.cmd.utils.CmdUtils;
  * 一般来说，我们尽可能的将处理函数的参数定义为String类型的
  * 但是如果命令中的参数是基本数据类型的一种 如两整数相加的命令，两个参数的类型实际是int型的
  * 那么允许将处理函数的参数类型定义为int或Integer类型，CommandAnalyzer会自动将String类型的参数转为int/Integer型
+ * 除基本数据类型外还内置了BigInteger、BigDecimal、Path、Duration及所有枚举类型的转换，
+ * 其他类型可以通过{@code CommandAnalyzer#registerConverter(Class, ArgumentConverter)}注册转换器后使用
  *
  * <p>关于处理函数的多类分布</p>
  * 因为{@code CommandAnalyzer}是单例的，所以可以在任何地方获取{@code CommandAnalyzer}的实例
@@ -87,6 +106,25 @@ import com.cmd.utils.CmdUtils;
  * 动态特性使得程序运行起来之后仍然可以动态的添加、删除命令甚至可以改变命令的处理方式
  * 详见handler包内的DynamicCommandHandler
  *
+ * <p>关于多线程</p>
+ * 命令注册表以只读快照的形式发布，所有的修改操作都会在拷贝上完成后整体替换掉旧的快照
+ * 所以分析及遍历命令时不需要加锁，也不会因为其他线程正在热加载而抛出ConcurrentModificationException
+ * 修改操作之间通过synchronized互斥
+ * <p>
+ * 除了在当前线程中处理命令，还可以通过{@code #processAsync(String)}异步处理，处理完成时通过CompletableFuture通知结果
+ * 命令的分析在调用processAsync的线程中完成，处理函数的调用则交给执行器，执行器由最先会被尝试的处理函数上的注解决定
+ * <ul>
+ * <li>没有标注的处理函数使用默认执行器，见{@code #setExecutor(Executor)}
+ * <li>标有{@code Blocking}的使用阻塞任务的执行器，见{@code #setBlockingExecutor(Executor)}
+ * <li>标有{@code CpuBound}的使用计算任务的执行器，见{@code #setCpuBoundExecutor(Executor)}
+ * <li>标有{@code OnCallerThread}的直接在调用processAsync的线程中调用
+ * </ul>
+ * 默认执行器及阻塞任务的执行器默认为每个任务一个虚拟线程，运行环境不支持虚拟线程时为按需创建守护线程的线程池
+ * 计算任务的执行器默认为{@code ForkJoinPool#commonPool()}
+ * <p>
+ * 命令被同时处理时，持有可变状态的处理函数可以标注{@code Serialized}，同一个处理对象中的这些处理函数会依次执行，
+ * 每个处理对象有自己的锁，不同处理对象之间互不影响，见{@code #lockOf(Object)}
+ *
  * <p>其他</p>
  * 一般情况下命令是必须有分隔符的，即使不使用注解去标明，也会存在默认分隔符空格
  * 但对于一参及无参命令，允许无分隔符定义命令，只要将delemiter标为null即可
@@ -97,6 +135,10 @@ import com.cmd.utils.CmdUtils;
  * 但是还有一种更优雅的解决方案，在处理函数上添加<code>@SingleParam</code>即可实现相同的功能
  * 同时依然可以使用自定义的分隔符来分割命令名与参数
  * <p>
+ * 参数中带有分隔符时也可以用双引号把这个参数括起来，如<code>echo "hello world" end</code>只有两个参数
+ * 引号内可以用\"表示双引号，用\\表示反斜杠，详细规则见{@code Tokens}
+ * 分隔符可以是任意字符串，分析过程中不使用正则表达式，所以分隔符中的字符都按字面意思匹配，不需要转义
+ * <p>
  * 我们提供了Outline注解用于阐明对于一个CommandName的总体性的概述，使用方式见类头注释
  * <p>
  * 一般来说CommandAnalyzer找到了一个能够处理一条命令的处理函数后，就不会继续去尝试调用其他的处理函数了
@@ -104,22 +146,36 @@ import com.cmd.utils.CmdUtils;
  * 调用{@code CommandAnalyzer#keepDispatch()}方法
  * <p>
  * 对于无参命令，请谨慎重载分隔符，请尽量避免在长度大于一的分隔符中出现转义字符
- * @version 2.4.2
+ * @version 2.5
  * Created by congxiaoyao on 2016/2/19.
  */
 public class CommandAnalyzer implements Analysable {
 
-    private static CommandAnalyzer commandAnalyzer;
+    private static volatile CommandAnalyzer commandAnalyzer;
 
-    protected List<Command> commands;
-    //可以通过这个map按照首字母在commands中查找，提高效率，这个int[]记录了startIndex跟length两个值
-    private Map<Character, int[]> commandsDirectory;
+    //命令注册表的快照，修改时整体替换
+    private volatile Catalog catalog;
     //通过commandName去寻找对应的outline
     protected Map<String, String> outlineMap;
-    //为了快速类型转换，通过type查找对应的转换动作
+    //通过type查找对应的转换动作，分发时已经改用注册时确定的转换器(见ArgumentConverter)，这里仅为兼容保留
     protected Map<Class<?>,StringParser> typesMap;
 
-    private static boolean keepDispatch = false;
+    //每个线程单独记录是否需要继续分发，避免多个线程同时处理命令时互相影响
+    private static final ThreadLocal<Boolean> keepDispatch = ThreadLocal.withInitial(() -> false);
+    //一次分发中每种参数类型签名的检查结果
+    private static final byte UNCHECKED = 0;
+    private static final byte ACCEPTED = 1;
+    private static final byte REJECTED = 2;
+    //每个线程各自持有一个分词结果，分割参数时反复使用
+    static final ThreadLocal<Tokens> tokens = ThreadLocal.withInitial(Tokens::new);
+    //把一行拆成多条命令时使用，与分割参数的Tokens分开，因为逐条处理命令时还要分割参数
+    private static final ThreadLocal<Tokens> commandTokens = ThreadLocal.withInitial(Tokens::new);
+    //一行中多条命令之间的分隔符，为null时一行就是一条命令
+    private volatile String commandSeparator;
+    //异步处理命令时使用的执行器，为null时使用Executors中的默认执行器
+    private volatile Executor defaultExecutor;
+    private volatile Executor blockingExecutor;
+    private volatile Executor cpuBoundExecutor;
 
     /**
      * @return 单例模式，获取CommandAnalyzer的实例
@@ -148,10 +204,9 @@ public class CommandAnalyzer implements Analysable {
 
     protected CommandAnalyzer(boolean initCommandList) {
         if (initCommandList) {
-            commands = new ArrayList<>();
-            commandsDirectory = new HashMap<>();
+            catalog = new Catalog(new ArrayList<>());
         }
-        outlineMap = new TreeMap<>();
+        outlineMap = new ConcurrentSkipListMap<>();
         initTypesMap();
     }
 
@@ -160,35 +215,39 @@ public class CommandAnalyzer implements Analysable {
      *
      * @param handlingObject 包含处理函数的对象
      */
-    public CommandAnalyzer addHandlingObject(Object handlingObject) {
+    public synchronized CommandAnalyzer addHandlingObject(Object handlingObject) {
+        List<Command> commands = new ArrayList<>(catalog.commands);
         Method[] methods = handlingObject.getClass().getDeclaredMethods();
+        Lock lock = lockOf(handlingObject);
         for (Method method : methods) {
             //尝试根据method上的注解生成Command对象
             Command temp = getCommandByMethod(method);
             if (temp == null) continue;
-            //赋值invoker以便反射调用
-            temp.getHandlingMethods().get(0).invoker = handlingObject;
-            //将command对象添加到command集合中，会查重
-            boolean repeat = false;
-            //遍历命令集合，处理新获取的Command对象已经存在的情况
-            for (Command command : commands) {
-                //如果命令集合中已经存在这个命令了
-                if (command.equals(temp)) {
-                    repeat = true;
-                    //将新生成的Command对象中的handlingMethod添加到已经存在的command中
-                    try {
-                        command.addHandlingMethod(temp.getHandlingMethods().get(0));
-                    } catch (IllegalHandlingMethodException e) {
-                        e.printStackTrace();
-                    }
-                    break;
-                }
+            //绑定invoker以便调用
+            try {
+                temp.getHandlingMethods().get(0).bind(handlingObject, lock);
+            } catch (IllegalHandlingMethodException e) {
+                e.printStackTrace();
+                continue;
             }
+            //将command对象添加到command集合中，会查重
+            int index = commands.indexOf(temp);
             //如果获取的Command对象不存在于命令集合，将其添加到命令结合
-            if (!repeat) insertCommand(temp);
+            if (index == -1) {
+                insertCommand(commands, temp);
+                continue;
+            }
+            //如果命令集合中已经存在这个命令了，将新生成的handlingMethod添加到已经存在的command的拷贝中
+            Command command = commands.get(index).copy();
+            try {
+                command.addHandlingMethod(temp.getHandlingMethods().get(0));
+            } catch (IllegalHandlingMethodException e) {
+                e.printStackTrace();
+            }
+            command.sortHandlingMethod();
+            commands.set(index, command);
         }
-        updateCommandsDirectory();
-        sortHandlingMethods();
+        catalog = new Catalog(commands);
         //添加outline
         if (!handlingObject.getClass().isAnnotationPresent(Outline.class)) return this;
         Outline outline = handlingObject.getClass().getAnnotation(Outline.class);
@@ -200,8 +259,41 @@ public class CommandAnalyzer implements Analysable {
         return this;
     }
 
+    /**
+     * 同一个处理对象中标有Serialized的处理函数共用一把锁，同一个对象被多次添加时也要使用同一把锁
+     * 只在添加处理对象时调用，所以直接在已经注册的处理函数中查找
+     * @param handlingObject 包含处理函数的对象
+     * @return 这个处理对象的锁，还没有时返回一把新的锁
+     */
+    protected Lock lockOf(Object handlingObject) {
+        Lock[] found = new Lock[1];
+        forEachCommand(command -> {
+            if (found[0] != null) return;
+            for (HandlingMethod method : command.getHandlingMethods()) {
+                if (method.invoker == handlingObject && method.lock() != null) {
+                    found[0] = method.lock();
+                    return;
+                }
+            }
+        });
+        return found[0] != null ? found[0] : new ReentrantLock();
+    }
+
+    /**
+     * 在处理函数中调用，使得当前线程正在处理的命令在此处理函数调用完后继续寻找其他的处理函数
+     */
     public static void keepDispatch() {
-        keepDispatch = true;
+        keepDispatch.set(true);
+    }
+
+    /**
+     * 注册一个参数转换器，之后注册的处理函数就可以使用type类型的参数了
+     * 转换器在处理函数注册时确定，所以请在注册处理函数之前注册转换器
+     * @param type 参数类型，基本数据类型及String的转换器不能被替换
+     * @param converter 转换器
+     */
+    public static <T> void registerConverter(Class<T> type, ArgumentConverter<? extends T> converter) {
+        Arguments.register(type, converter);
     }
 
     public void initTypesMap() {
@@ -229,6 +321,7 @@ public class CommandAnalyzer implements Analysable {
         typesMap.put(Short.class,(arg) 	-> 	Short.parseShort(arg));
         typesMap.put(short.class,(arg) 	-> 	Short.parseShort(arg));
         typesMap.put(Long.class,(arg) 	-> 	Long.parseLong(arg));
+        typesMap.put(long.class,(arg) 	-> 	Long.parseLong(arg));
         typesMap.put(String.class, (arg)->  arg);
     }
 
@@ -247,7 +340,7 @@ public class CommandAnalyzer implements Analysable {
             CmdDef cmdDef = method.getAnnotation(CmdDef.class);
             //如果cmdDef.commandName()是默认值将使用函数名作为命令名
             String commandName = reanalyseCommandName(cmdDef.commandName(), method);
-            //如果分隔符是转义字符就给他转义，如果是'null'就给他置空
+            //如果分隔符是'null'就给他置空
             String delimiter = reanalyseDelimiter(cmdDef.delimiter(),method);
             command = new Command(commandName, delimiter);
             //如果cmdDef.description()是默认值则给description赋值函数名
@@ -261,7 +354,7 @@ public class CommandAnalyzer implements Analysable {
             String delimiter = " ";
             //如果存在方法上存在Delimiter注解，则delimiter为注解中的值
             if (method.isAnnotationPresent(Delimiter.class)) {
-                //如果分隔符是转义字符就给他转义,如果是'null'就给他置空
+                //如果分隔符是'null'就给他置空
                 delimiter = reanalyseDelimiter(method.getAnnotation(Delimiter.class).value(),method);
             }
             command = new Command(commandName, delimiter);
@@ -275,15 +368,6 @@ public class CommandAnalyzer implements Analysable {
         //其他情况将不被认为能解析出命令
         else return null;
         try {
-            if (command.delimiter != null && command.delimiter.length() > 2) {
-                char[] delim = command.delimiter.toCharArray();
-                for (char c : delim) {
-                    if (c == '\\') {
-                        throw new BadDefinitionException("非法分隔符" + command.delimiter + "\n" +
-                                        BadDefinitionException.ERROR,method.toString());
-                    }
-                }
-            }
             //由这个method对象生成handlingMethod
             HandlingMethod handlingMethod = new HandlingMethod(method);
             handlingMethod.setDescription(description);
@@ -321,9 +405,8 @@ public class CommandAnalyzer implements Analysable {
 
     /**
      * @param delimiter
-     * @return 对于从注解中获取的Description
-     *         如果是转义字符就给他转义
-     *         如果是内容是null返回空
+     * @return 对于从注解中获取的Delimiter
+     *         如果是内容是null返回空，否则原样返回，分隔符按字面意思匹配，不需要转义
      */
     protected String reanalyseDelimiter(String delimiter, Method method) {
         try {
@@ -341,139 +424,168 @@ public class CommandAnalyzer implements Analysable {
         } catch (BadDefinitionException e) {
             e.printStackTrace();
         }
-        delimiter = CmdUtils.characterEscape(delimiter);
         return delimiter;
     }
 
     /**
-     * 将一条command插入到commands集合中，但并不更新目录map
-     * 一定不要忘记更新目录，否则会出问题
-     *
-     * @param command
-     * @return 插入完成后参数command在命令集合中的位置，插入失败返回-1
+     * 从start开始通过分隔符分割出参数，支持引号，分割过程不使用正则表达式
+     * 与原来使用的String.split相同，末尾多余的分隔符产生的空参数都会被去掉，如"two a b  "的参数是a、b
+     * 用引号括起来的空串("")是用户有意给出的参数，会被保留
+     * @param content 用户输入
+     * @param start 第一个参数的起始位置
+     * @param delimiter
+     * @return 解析出来的参数，没有参数返回null
      */
-    private int insertCommand(Command command) {
-        if (command == null) return -1;
-        Character key = command.commandName.charAt(0);
-        int[] info = commandsDirectory.get(key);
-        if (info == null) {
-            int start = commands.size();
-            commands.add(command);
-            commandsDirectory.put(key, new int[]{start, 1});
-            return start;
-        } else {
-            //找位置插队
-            for (int i = 0, len = commands.size(); i < len; i++) {
-                if (commands.get(i).commandName.charAt(0) == key) {
-                    commands.add(i, command);
-                    return i;
-                }
-            }
+    protected static String[] splitParameters(CharSequence content, int start, String delimiter) {
+        Tokens tokens = CommandAnalyzer.tokens.get();
+        int count = tokens.split(content, start, delimiter);
+        while (count > 0 && isUnquotedEmpty(tokens, count - 1)) count--;
+        String[] params = null;
+        if (count > 0) {
+            params = new String[count];
+            for (int i = 0; i < count; i++) params[i] = tokens.get(i);
         }
-        return -1;
+        tokens.clear();
+        return params;
     }
 
     /**
-     * 更新命令目录，使得目录map能够正常工作
+     * @return 第index段是不是没有被引号括起来的空串
      */
-    private void updateCommandsDirectory() {
-        if (commands.size() <= 1) return;
-        //根据排好的顺序建立目录
-        Iterator<Command> iterator = commands.iterator();
-        Command temp = iterator.next();
-        char lastChar = temp.commandName.charAt(0), nowChar;
-        int len = 1;
-        for (int i = 1; iterator.hasNext(); i++) {
-            temp = iterator.next();
-            nowChar = temp.commandName.charAt(0);
-            if (nowChar != lastChar) {
-                int[] info = commandsDirectory.get(lastChar);
-                info[0] = i - len;
-                info[1] = len;
-                len = 0;
+    private static boolean isUnquotedEmpty(Tokens tokens, int index) {
+        int start = tokens.start(index), end = tokens.end(index);
+        if (start != end) return false;
+        CharSequence source = tokens.source();
+        return start == 0 || end == source.length()
+                || source.charAt(start - 1) != Tokens.QUOTE || source.charAt(end) != Tokens.QUOTE;
+    }
+
+    /**
+     * 将一条command插入到commands集合中，首字母相同的命令总是连续存放以便建立目录
+     *
+     * @param commands 还未发布的命令集合
+     * @param command
+     * @return 插入完成后参数command在命令集合中的位置，插入失败返回-1
+     */
+    private static int insertCommand(List<Command> commands, Command command) {
+        if (command == null) return -1;
+        char key = command.commandName.charAt(0);
+        //找位置插队
+        for (int i = 0, len = commands.size(); i < len; i++) {
+            if (commands.get(i).commandName.charAt(0) == key) {
+                commands.add(i, command);
+                return i;
             }
-            lastChar = nowChar;
-            len++;
         }
-        int[] info = commandsDirectory.get(lastChar);
-        info[0] = commands.size() - len;
-        info[1] = len;
+        commands.add(command);
+        return commands.size() - 1;
     }
 
     /**
      * 对于类内维护的Command集合中的所有的command，对其维护的HandlingMethod按OnlyCare数量排序
+     * 与注册时一样在拷贝上排序后发布新的命令集合，已经发布的Command不会被改动
      */
-    public void sortHandlingMethods() {
-        for (Command command : commands) {
+    public synchronized void sortHandlingMethods() {
+        List<Command> commands = new ArrayList<>(catalog.commands);
+        for (int i = 0, len = commands.size(); i < len; i++) {
+            Command command = commands.get(i).copy();
             command.sortHandlingMethod();
+            commands.set(i, command);
         }
+        catalog = new Catalog(commands);
     }
 
     /**
      * 分析一条字符串是否是一条给定的命令,要求commandName相同且分隔符没毛病
+     * 分析过程不会修改任何注册的command对象，解析出的参数保存在返回的AnalysisResult中
+     * 末尾多余的分隔符不会产生空参数，见{@code #splitParameters(CharSequence, int, String)}
      *
      * @param content 用户提交的字符串
-     * @return 如果能够成功匹配，返回一个command对象，否则返回null
+     * @return 如果能够成功匹配，返回一个新的AnalysisResult对象，否则返回null
      */
-    public Command analyze(String content) {
+    public AnalysisResult analyze(String content) {
         if (content.length() == 0) return null;
-        int[] info = commandsDirectory.get(content.charAt(0));
+        Catalog catalog = this.catalog;
+        int[] info = catalog.directory.get(content.charAt(0));
         if (info == null) return null;
         for (int i = info[0], len = info[1] + i; i < len; i++) {
-            Command command = commands.get(i);
+            Command command = catalog.commands.get(i);
+            if (!content.startsWith(command.commandName)) continue;
+            int cmdNameLen = command.commandName.length();
             //对于一参无分隔符命令特别处理
-            if (command.delimiter == null &&
-                    CmdUtils.isBeginWith(command.commandName, content, null)) {
-                String param = content.replaceFirst(command.commandName, "");
+            if (command.delimiter == null) {
                 //如果拿掉commandName后留下了一些内容
-                if (param.length() != 0) {
-                    command.parameters = new String[]{param};
-                }else {
-                    command.parameters = null;
+                if (content.length() != cmdNameLen) {
+                    return new AnalysisResult(command, new String[]{content.substring(cmdNameLen)});
                 }
-                return command;
-            }
-            //先看给定字符串是不是当前这个命令的类型
-            if (!CmdUtils.isBeginWith(command.commandName, content, command.delimiter)) continue;
-            //然后在去掉命令开头去分析参数
-            String contentNew = content.replaceFirst(command.commandName, "");
-            //初始化参数个数
-            String[] parameters = null;
-            //如果有参数，求给定字符串中包含的参数个数
-            if (contentNew.length() > command.delimiter.length()) {
-                contentNew = contentNew.replaceFirst(command.delimiter, "");
-                parameters = contentNew.split(command.delimiter);
-                command.parameters = parameters;
-                return command;
-            }
-            //没参数将command.parameters置为null
-            else {
-                command.parameters = null;
-                return command;
+                return new AnalysisResult(command, null);
             }
+            //没参数
+            if (content.length() == cmdNameLen) return new AnalysisResult(command, null);
+            //命令名之后必须紧跟分隔符，否则不是这个命令
+            if (!content.startsWith(command.delimiter, cmdNameLen)) continue;
+            //去掉命令名及分隔符后分析参数
+            return new AnalysisResult(command,
+                    splitParameters(content, cmdNameLen + command.delimiter.length(), command.delimiter));
         }
         return null;
     }
 
     /**
-     * command对象中去寻找对应的处理它的方法（依据Command参数个数、能否通过OnlyCare的筛查）
+     * 与{@code #analyze(String)}相同，接受任意的字符序列作为输入
      *
-     * @param command
-     * @return 如果传入的command处理成功返回true否则返回false
+     * @param content 用户提交的字符序列
+     * @return 如果能够成功匹配，返回一个新的AnalysisResult对象，否则返回null
+     */
+    public AnalysisResult analyze(CharSequence content) {
+        return analyze(content.toString());
+    }
+
+    /**
+     * 只查找用户输入对应的命令而不解析参数
+     *
+     * @param content 用户提交的字符序列
+     * @return 匹配到的命令，这是所有线程共享的对象，请不要修改它，没有匹配到返回null
      */
-    public boolean handleCommand(Command command) throws NoneHandlingMethodException {
+    public Command lookup(CharSequence content) {
+        AnalysisResult result = analyze(content);
+        return result == null ? null : result.getCommand();
+    }
+
+    /**
+     * 在分析结果所匹配的command对象中去寻找对应的处理它的方法（依据参数个数、能否通过OnlyCare的筛查）
+     * 通过command的分发表直接定位到参数个数及OnlyCare都吻合的处理函数，不再逐个尝试
+     *
+     * @param result analyze函数返回的分析结果
+     * @return 如果传入的命令处理成功返回true否则返回false
+     */
+    public boolean handleCommand(AnalysisResult result) throws NoneHandlingMethodException {
         boolean handled = false;
-        List<HandlingMethod> handlingMethods = command.getHandlingMethods();
-        if (handlingMethods.isEmpty())
+        Command command = result.getCommand();
+        DispatchTable table = result.dispatchTable();
+        if (command.getHandlingMethods().isEmpty())
             throw new NoneHandlingMethodException(command.toString());
-        for (HandlingMethod handlingMethod : handlingMethods) {
+        String[] parameters = result.parameters();
+        //同一种参数类型签名只检查一次能否转换，第一次用到时才分配
+        byte[] checked = null;
+        DispatchTable.Candidate[] candidates = table.candidates(parameters);
+        if (candidates == null) return false;
+        for (DispatchTable.Candidate candidate : candidates) {
+            int signature = candidate.signature;
+            if (signature != DispatchTable.Candidate.NO_SIGNATURE) {
+                if (checked == null) checked = new byte[table.signatureCount(parameters.length)];
+                if (checked[signature] == UNCHECKED) {
+                    checked[signature] = candidate.method.accepts(parameters) ? ACCEPTED : REJECTED;
+                }
+                if (checked[signature] == REJECTED) continue;
+            }
             try {
-                if (checkAndInvoke(command, handlingMethod)) {
-                    if(!keepDispatch) return true;
+                if (invoke(result, candidate.method, parameters)) {
+                    if(!keepDispatch.get()) return true;
                     handled = true;
-                    keepDispatch = false;
+                    keepDispatch.set(false);
                 }
-            } catch (InvocationTargetException | IllegalAccessException e) {
+            } catch (InvocationTargetException e) {
                 e.printStackTrace();
             }
         }
@@ -481,113 +593,93 @@ public class CommandAnalyzer implements Analysable {
     }
 
     /**
-     * 检查参数handlingMethod是不是符合当前command的调用标准（这个处理函数是不是能够处理这个command）
-     * 如果能够处理就去反射调用
+     * 调用分发表选出的处理函数，分发表已经保证了参数个数及OnlyCare都是吻合的
      *
-     * @param command
+     * @param result
      * @param handlingMethod
-     * @return 成功反射调用返回true
+     * @param parameters 本次调用的参数，固定参数个数的处理函数要求已经检查过能否转换
+     * @return 成功调用返回true
      * @throws InvocationTargetException
-     * @throws IllegalAccessException
      */
-    private boolean checkAndInvoke(Command command, HandlingMethod handlingMethod)
-            throws InvocationTargetException, IllegalAccessException {
-        int mtdParCnt = handlingMethod.getParamCount();
-        int cmdParCnt = command.parameters == null ? 0 : command.parameters.length;
-        //如果handlingMethod的参数个数与command中所保存的参数个数吻合
+    private boolean invoke(AnalysisResult result, HandlingMethod handlingMethod, String[] parameters)
+            throws InvocationTargetException {
         HandlingMethod.VariableType variableType = handlingMethod.variadicType;
-        //检查处理函数上的参数是否为Command类型或String数组类型或SingleParam 如果是完成反射调用
-        if (variableType != HandlingMethod.VariableType.TYPE_IMMUTABLE) {
-            if (command.parameters == null) command.parameters = new String[0];
-            if (variableType == HandlingMethod.VariableType.TYPE_COMMAND) {
-                handlingMethod.method.invoke(handlingMethod.invoker, command);
-                return true;
-            } else if(variableType == HandlingMethod.VariableType.TYPE_STRING_ARRAY){
-                handlingMethod.method.invoke(handlingMethod.invoker, (Object) command.parameters);
-                return true;
-            } else if (variableType == HandlingMethod.VariableType.TYPE_SINGLE_PARAM) {
-                if (cmdParCnt != 0) {
-                    StringBuilder builder = new StringBuilder();
-                    for (String str : command.parameters) {
-                        builder.append(str).append(" ");
-                    }
-                    handlingMethod.method.invoke(handlingMethod.invoker, builder.toString());
-                    return true;
-                }
+        //检查处理函数上的参数是否为Command类型或String数组类型或SingleParam 如果是完成调用
+        if (variableType == HandlingMethod.VariableType.TYPE_COMMAND) {
+            handlingMethod.invoke(new Object[]{result.toCommand()});
+            return true;
+        } else if (variableType == HandlingMethod.VariableType.TYPE_STRING_ARRAY) {
+            handlingMethod.invoke(new Object[]{parameters.clone()});
+            return true;
+        } else if (variableType == HandlingMethod.VariableType.TYPE_SINGLE_PARAM) {
+            if (parameters.length == 0) return false;
+            StringBuilder builder = new StringBuilder();
+            for (String str : parameters) {
+                builder.append(str).append(" ");
             }
+            handlingMethod.invoke(new Object[]{builder.toString()});
+            return true;
         }
-        //现在不存在可变参数的处理函数了，检查handlingMethod的参数个数与command中所保存的参数个数是否吻合
-        if (mtdParCnt != cmdParCnt) return false;
-        //检查OnlyCare是否能通过
-        if (!checkIfOnlyCareCanPass(handlingMethod, command)) return false;
-        //无参的处理函数不需要基本参数类型转换，已经可以反射调用了
+        //无参的处理函数不需要基本参数类型转换，已经可以调用了
         if (handlingMethod.method.getParameterCount() == 0) {
-            handlingMethod.method.invoke(handlingMethod.invoker);
+            handlingMethod.invoke();
             return true;
         }
-        //强制参数类型转换
-        Class<?>[] types = handlingMethod.getParameterTypes();
-        Object[] objects = new Object[types.length];
-        try {
-            for (int i = 0, len = objects.length; i < len; i++){
-                objects[i] = toType(command.parameters[i], types[i]);
-                if (objects[i] == null) return false;
-            }
-        } catch (IllegalHandlingMethodException e) {
-            System.err.println(handlingMethod.method.toString());
-            e.printStackTrace();
-            return false;
-        }
-        //反射调用
-        handlingMethod.method.invoke(handlingMethod.invoker, (Object[]) objects);
+        //通过拼接了类型转换的MethodHandle调用，参数直接从String解析后传入处理函数
+        handlingMethod.invokeParsed(parameters);
         return true;
     }
 
-    /**
-     * 判断这个method是否带有OnlyCare注解，如果带有则判断是否符合OnlyCare的要求
-     *
-     * @param command
-     * @param method
-     * @return 符合要求（通过了可以被反射调用）返回true
-     */
-    private static boolean checkIfOnlyCareCanPass(HandlingMethod method, Command command) {
-        String[] params = command.parameters;
-        if (!method.isOnlyCareAnnotated()) return true;
-        for (int i = 0; i < method.getParamCount(); i++) {
-            String care = method.getOnlyCareByParam(i);
-            if (care != null && !params[i].equals(care)) {
-                return false;
-            }
-        }
-        return true;
+    @Override
+    public boolean process(String content) {
+        return process((CharSequence) content);
+    }
+
+    @Override
+    public boolean process(CharSequence content) {
+        String separator = commandSeparator;
+        if (separator == null) return processCommand(content);
+        return processLine(content, separator, commandTokens.get());
     }
 
     /**
-     * 将一个String类型的参数arg解析为type类型并以Object类型的形式返回
-     *
-     * @param arg
-     * @param type
-     * @return
-     * @throws IllegalHandlingMethodException
+     * 处理一行输入，设置了命令分隔符时行中的每条命令都会被依次处理
+     * 处理函数可能在同一线程中再次调用process，它会覆盖segments，
+     * 所以分割完之后先把每条命令的位置复制出来并清空segments，再开始处理
+     * @param line 一行用户输入
+     * @param separator 命令分隔符，为null时整行作为一条命令
+     * @param segments 拆分命令用的Tokens，返回时(以及调用处理函数时)已被清空
+     * @return 所有命令都处理成功返回true，没有命令返回false
      */
-    private Object toType(String arg, Class<?> type) throws IllegalHandlingMethodException {
-        StringParser parser = typesMap.get(type);
-        Object result = null;
-        if(parser == null) throw new IllegalHandlingMethodException();
-        try {
-            result = parser.prase(arg);
-        } catch (Exception e) {
-            return null;
+    private boolean processLine(CharSequence line, String separator, Tokens segments) {
+        if (separator == null) return processCommand(line);
+        int count = segments.splitOutsideQuotes(line, 0, separator);
+        //只有一条命令且没有被截短时直接处理原字串，不需要复制
+        if (count == 0 || (count == 1 && segments.start(0) == 0 && segments.end(0) == line.length())) {
+            segments.clear();
+            return count != 0 && processCommand(line);
+        }
+        int[] bounds = new int[count * 2];
+        for (int i = 0; i < count; i++) {
+            bounds[2 * i] = segments.start(i);
+            bounds[2 * i + 1] = segments.end(i);
         }
-        return result;
+        segments.clear();
+        boolean success = true;
+        for (int i = 0; i < count; i++) {
+            success &= processCommand(line.subSequence(bounds[2 * i], bounds[2 * i + 1]));
+        }
+        return success;
     }
 
-    @Override
-    public boolean process(String content) {
-        Command command = analyze(content);
-        if (command != null) {
+    /**
+     * 处理一条命令，与{@code #process(String)}相同但不会把输入拆成多条命令
+     */
+    private boolean processCommand(CharSequence content) {
+        AnalysisResult result = analyze(content);
+        if (result != null) {
             try {
-                return handleCommand(command);
+                return handleCommand(result);
             } catch (NoneHandlingMethodException e) {
                 e.printStackTrace();
             }
@@ -595,29 +687,216 @@ public class CommandAnalyzer implements Analysable {
         return false;
     }
 
+    @Override
+    public boolean[] processAll(Iterable<? extends CharSequence> lines) {
+        String separator = commandSeparator;
+        Tokens segments = commandTokens.get();
+        boolean[] results = new boolean[16];
+        int count = 0;
+        for (CharSequence line : lines) {
+            if (count == results.length) results = Arrays.copyOf(results, count * 2);
+            results[count++] = processLine(line, separator, segments);
+        }
+        return Arrays.copyOf(results, count);
+    }
+
+    @Override
+    public boolean[] process(Reader reader) throws IOException {
+        String separator = commandSeparator;
+        Tokens segments = commandTokens.get();
+        BufferedReader lines = reader instanceof BufferedReader ?
+                (BufferedReader) reader : new BufferedReader(reader);
+        boolean[] results = new boolean[16];
+        int count = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (count == results.length) results = Arrays.copyOf(results, count * 2);
+            results[count++] = processLine(line, separator, segments);
+        }
+        return Arrays.copyOf(results, count);
+    }
+
+    @Override
+    public boolean[] process(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return process(reader);
+        }
+    }
+
+    @Override
+    public CompletableFuture<DispatchResult> processAsync(String content) {
+        String separator = commandSeparator;
+        if (separator == null) return dispatchAsync(content);
+        Tokens segments = commandTokens.get();
+        int count = segments.splitOutsideQuotes(content, 0, separator);
+        //只有一条命令且没有被截短时直接处理原字串
+        if (count == 1 && segments.start(0) == 0 && segments.end(0) == content.length()) {
+            segments.clear();
+            return dispatchAsync(content);
+        }
+        String[] commands = new String[count];
+        for (int i = 0; i < count; i++) {
+            commands[i] = content.substring(segments.start(i), segments.end(i));
+        }
+        segments.clear();
+        //前一条命令处理完成后才开始分析及处理下一条，所以之后的命令是在处理完前一条命令的线程中提交的
+        CompletableFuture<List<DispatchResult>> chain = CompletableFuture.completedFuture(new ArrayList<>(count));
+        for (String command : commands) {
+            chain = chain.thenCompose(parts -> dispatchAsync(command).thenApply(part -> {
+                parts.add(part);
+                return parts;
+            }));
+        }
+        return chain.thenApply(parts -> new DispatchResult(content, parts));
+    }
+
+    /**
+     * 在当前线程中分析一条命令，再根据处理函数上的注解交给对应的执行器处理
+     * @param content 一条命令
+     * @return 处理完成时给出处理结果的CompletableFuture
+     */
+    private CompletableFuture<DispatchResult> dispatchAsync(String content) {
+        AnalysisResult result = analyze(content);
+        if (result == null) return CompletableFuture.completedFuture(new DispatchResult(content, null, false));
+        Executor executor = executorFor(result);
+        if (executor == null) return CompletableFuture.completedFuture(dispatch(content, result));
+        return CompletableFuture.supplyAsync(() -> dispatch(content, result), executor);
+    }
+
+    private DispatchResult dispatch(String content, AnalysisResult result) {
+        boolean handled = false;
+        try {
+            handled = handleCommand(result);
+        } catch (NoneHandlingMethodException e) {
+            e.printStackTrace();
+        }
+        return new DispatchResult(content, result.getCommand(), handled);
+    }
+
+    /**
+     * 通过分发表找到第一个真正会被调用的处理函数，由它上面的注解决定在哪个执行器中处理这条命令
+     * @param result 分析结果
+     * @return 处理这条命令的执行器，需要在当前线程中处理时返回null
+     */
+    private Executor executorFor(AnalysisResult result) {
+        Executor executor;
+        switch (executionOf(result)) {
+            case CALLER:
+                return null;
+            case BLOCKING:
+                executor = blockingExecutor;
+                return executor != null ? executor : DefaultExecutors.BLOCKING;
+            case CPU_BOUND:
+                executor = cpuBoundExecutor;
+                return executor != null ? executor : ForkJoinPool.commonPool();
+            default:
+                executor = defaultExecutor;
+                return executor != null ? executor : DefaultExecutors.BLOCKING;
+        }
+    }
+
+    /**
+     * 按照{@code #handleCommand(AnalysisResult)}的顺序及规则跳过参数不能转换的处理函数，
+     * 否则第一个候选拒绝了参数时，真正被调用的处理函数会在错误的执行器中执行
+     * @param result 分析结果
+     * @return 第一个会被调用的处理函数的Execution，没有时为DEFAULT
+     */
+    private static HandlingMethod.Execution executionOf(AnalysisResult result) {
+        String[] parameters = result.parameters();
+        DispatchTable.Candidate[] candidates = result.dispatchTable().candidates(parameters);
+        if (candidates == null) return HandlingMethod.Execution.DEFAULT;
+        for (DispatchTable.Candidate candidate : candidates) {
+            HandlingMethod method = candidate.method;
+            if (candidate.signature != DispatchTable.Candidate.NO_SIGNATURE && !method.accepts(parameters)) continue;
+            //与invoke相同，没有参数时不会调用SingleParam的处理函数
+            if (method.variadicType == HandlingMethod.VariableType.TYPE_SINGLE_PARAM
+                    && parameters.length == 0) continue;
+            return method.execution;
+        }
+        return HandlingMethod.Execution.DEFAULT;
+    }
+
+    /**
+     * @return 异步处理命令时默认使用的执行器，每个任务一个虚拟线程，运行环境不支持虚拟线程时为按需创建守护线程的线程池
+     * 其他需要类似执行器的前端(如{@code com.cmd.net.CommandServer})也可以使用它
+     */
+    public static Executor getDefaultExecutor() {
+        return DefaultExecutors.BLOCKING;
+    }
+
+    /**
+     * 设置异步处理命令时没有标注执行器的处理函数所使用的执行器
+     * 默认为每个任务一个虚拟线程，运行环境不支持虚拟线程时为按需创建守护线程的线程池
+     * @param executor 执行器，为null时恢复默认
+     */
+    public void setExecutor(Executor executor) {
+        this.defaultExecutor = executor;
+    }
+
+    /**
+     * 设置异步处理命令时标有{@code Blocking}的处理函数所使用的执行器
+     * 默认与{@code #setExecutor(Executor)}的默认值相同
+     * @param executor 执行器，为null时恢复默认
+     */
+    public void setBlockingExecutor(Executor executor) {
+        this.blockingExecutor = executor;
+    }
+
+    /**
+     * 设置异步处理命令时标有{@code CpuBound}的处理函数所使用的执行器，默认为{@code ForkJoinPool#commonPool()}
+     * @param executor 执行器，为null时恢复默认
+     */
+    public void setCpuBoundExecutor(Executor executor) {
+        this.cpuBoundExecutor = executor;
+    }
+
+    /**
+     * 设置一行中多条命令之间的分隔符，如";"，之后提交的每一行输入都会先按它拆分成多条命令再逐条处理
+     * 成对的引号内的分隔符不起作用，设为null(默认)时一行就是一条命令
+     * @param separator 命令分隔符
+     */
+    public void setCommandSeparator(String separator) {
+        if (separator != null && separator.isEmpty())
+            throw new IllegalArgumentException("command separator can not be empty");
+        this.commandSeparator = separator;
+    }
+
+    /**
+     * @return 一行中多条命令之间的分隔符，没有设置返回null
+     */
+    public String getCommandSeparator() {
+        return commandSeparator;
+    }
+
     @Deprecated
     @Override
     public List<Command> getCommands() {
-        return commands;
+        return catalog.commands;
     }
 
     @Override
-    public void removeCommand(Command command) {
+    public synchronized void removeCommand(Command command) {
         if (command == null) return;
-        char key = command.commandName.charAt(0);
-        int[] sl = commandsDirectory.get(key);
-        int start = sl[0], end = sl[1] + start;
-        for (int i = start; i < end; i++) {
-            if (command.equals(commands.get(i))) {
-                commands.remove(i);
-                int[] infos = commandsDirectory.get(command.commandName.charAt(0));
-                if (infos[1] == 1) {
-                    commandsDirectory.remove(command.commandName.charAt(0));
-                }
-                updateCommandsDirectory();
-                break;
-            }
+        List<Command> commands = new ArrayList<>(catalog.commands);
+        if (commands.remove(command)) {
+            catalog = new Catalog(commands);
+        }
+    }
+
+    @Override
+    public synchronized List<Command> removeHandlingMethods(Predicate<HandlingMethod> filter) {
+        List<Command> commands = new ArrayList<>(catalog.commands);
+        List<Command> emptied = new ArrayList<>();
+        boolean changed = false;
+        for (int i = 0, len = commands.size(); i < len; i++) {
+            Command command = commands.get(i).copy();
+            if (!command.removeHandlingMethods(filter)) continue;
+            commands.set(i, command);
+            changed = true;
+            if (command.getHandlingMethods().isEmpty()) emptied.add(command);
         }
+        if (changed) catalog = new Catalog(commands);
+        return emptied;
     }
 
     @Override
@@ -680,7 +959,7 @@ public class CommandAnalyzer implements Analysable {
 
     @Override
     public void forEachCommand(Consumer<Command> consumer) {
-        for (Command command : commands) {
+        for (Command command : catalog.commands) {
             consumer.accept(command);
         }
     }
@@ -688,4 +967,53 @@ public class CommandAnalyzer implements Analysable {
     public String getOutLine(String commandName) {
         return outlineMap.get(commandName);
     }
-}
\ No newline at end of file
+
+    /**
+     * 命令注册表的一个只读快照，包括命令集合及按首字母建立的目录
+     */
+    private static final class Catalog {
+
+        final List<Command> commands;
+        //可以通过这个map按照首字母在commands中查找，提高效率，这个int[]记录了startIndex跟length两个值
+        final Map<Character, int[]> directory;
+
+        /**
+         * @param commands 首字母相同的命令连续存放的命令集合，构造后不能再修改
+         */
+        Catalog(List<Command> commands) {
+            this.commands = Collections.unmodifiableList(commands);
+            this.directory = new HashMap<>();
+            //根据排好的顺序建立目录
+            for (int i = 0, len = commands.size(); i < len; i++) {
+                char key = commands.get(i).commandName.charAt(0);
+                int[] info = directory.get(key);
+                if (info == null) directory.put(key, new int[]{i, 1});
+                else info[1]++;
+            }
+        }
+    }
+
+    /**
+     * 异步处理命令时默认使用的执行器，第一次异步处理命令时才会创建
+     */
+    private static final class DefaultExecutors {
+
+        static final Executor BLOCKING = create();
+
+        /**
+         * @return 运行环境支持虚拟线程时返回每个任务一个虚拟线程的执行器，否则返回按需创建守护线程的线程池
+         */
+        private static Executor create() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                AtomicInteger count = new AtomicInteger();
+                return Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "cmd-dispatch-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.cmd.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.cmd.annotations.CommandName;
+
+/**
+ * 多个线程不加任何外部锁同时使用同一个分析器处理命令，检查每次调用拿到的参数都是自己的
+ * <ul>
+ * <li>process：每个线程不断提交{@code add a b}，a、b由线程编号与序号决定，处理函数把a+b记录在当前线程中，
+ * process返回后调用者检查记录的结果
+ * <li>analyze：每个线程先分析一批命令，再以相反的顺序逐个交给handleCommand，
+ * 检查分析结果在其他线程分析与处理的同时保持不变
+ * </ul>
+ * FastAnalyzer与CommandAnalyzer各测一遍，结果不对时抛出异常
+ * <pre>
+ * java com.cmd.core.ConcurrencyStress [线程数] [每个线程的命令数]
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class ConcurrencyStress {
+
+    private static final int BATCH = 16;
+
+    //处理函数在调用者线程中执行，结果记录在这里由调用者取回
+    private static final ThreadLocal<long[]> sum = ThreadLocal.withInitial(() -> new long[1]);
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                : Math.max(8, Runtime.getRuntime().availableProcessors());
+        int commands = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        stress("FastAnalyzer", FastAnalyzer.handleWith(new ConcurrencyStress()), threads, commands);
+        stress("CommandAnalyzer", CommandAnalyzer.handleWith(new ConcurrencyStress()), threads, commands);
+    }
+
+    @CommandName
+    public void add(int a, int b) {
+        sum.get()[0] = (long) a + b;
+    }
+
+    private static void stress(String name, CommandAnalyzer analyzer, int threads, int commands) throws Exception {
+        //预热
+        run(analyzer, threads, commands / 16);
+        long start = System.nanoTime();
+        long checked = run(analyzer, threads, commands);
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%s %d threads: %d commands checked in %d ms, %d commands/s%n",
+                name, threads, checked, nanos / 1000000, (long) (checked * 1e9 / nanos));
+    }
+
+    /**
+     * @return 检查过的命令数
+     */
+    private static long run(CommandAnalyzer analyzer, int threads, int commands) throws Exception {
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicLong checked = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                    checked.addAndGet(work(analyzer, id, commands));
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "stress-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        ready.await();
+        go.countDown();
+        for (Thread worker : workers) worker.join();
+        if (failure.get() != null) throw new IllegalStateException("stress failed", failure.get());
+        return checked.get();
+    }
+
+    private static long work(CommandAnalyzer analyzer, int id, int commands) throws Exception {
+        long[] result = sum.get();
+        AnalysisResult[] batch = new AnalysisResult[BATCH];
+        long[] expected = new long[BATCH];
+        int i = 0;
+        while (i < commands) {
+            //一半的命令直接process
+            for (int k = 0; k < BATCH && i < commands; k++, i++) {
+                int a = id * 1000000 + i, b = i;
+                if (!analyzer.process("add " + a + " " + b)) {
+                    throw new IllegalStateException("not handled: add " + a + " " + b);
+                }
+                verify(result[0], (long) a + b);
+            }
+            //另一半先全部分析，再倒序处理
+            int n = 0;
+            for (; n < BATCH && i < commands; n++, i++) {
+                int a = id * 1000000 + i, b = -i;
+                batch[n] = analyzer.analyze("add " + a + " " + b);
+                expected[n] = (long) a + b;
+            }
+            for (int k = n - 1; k >= 0; k--) {
+                if (!analyzer.handleCommand(batch[k])) {
+                    throw new IllegalStateException("not handled: " + batch[k]);
+                }
+                verify(result[0], expected[k]);
+            }
+        }
+        return commands;
+    }
+
+    private static void verify(long actual, long expected) {
+        if (actual != expected) {
+            throw new IllegalStateException("expected " + expected + " but handler saw " + actual);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.cmd.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 异步处理一行用户输入的结果，由{@code Analysable#processAsync(String)}返回的CompletableFuture给出
+ * <p>
+ * 对于只有一条命令的输入，结果中记录了匹配到的命令以及是否有处理函数成功处理了它
+ * 设置了命令分隔符且一行中有多条命令时，每条命令各自的结果按顺序保存在{@code #getParts()}中，
+ * 整行的结果只有在所有命令都处理成功时才算成功
+ *
+ * @version 2.5
+ */
+public final class DispatchResult {
+
+    private final String content;               //用户输入
+    private final Command command;              //匹配到的命令，没有匹配到或一行中有多条命令时为null
+    private final boolean handled;              //是否处理成功
+    private final List<DispatchResult> parts;   //一行中每条命令的结果，只有一条命令时为空
+
+    DispatchResult(String content, Command command, boolean handled) {
+        this.content = content;
+        this.command = command;
+        this.handled = handled;
+        this.parts = Collections.emptyList();
+    }
+
+    /**
+     * @param content 一整行用户输入
+     * @param parts 这一行中每条命令的结果，按命令在行中的顺序排列
+     */
+    DispatchResult(String content, List<DispatchResult> parts) {
+        boolean handled = !parts.isEmpty();
+        for (DispatchResult part : parts) {
+            handled &= part.handled;
+        }
+        this.content = content;
+        this.command = null;
+        this.handled = handled;
+        this.parts = Collections.unmodifiableList(parts);
+    }
+
+    /**
+     * @return 用户输入
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return 匹配到的命令，这是所有线程共享的对象，请不要修改它，没有匹配到或一行中有多条命令时返回null
+     */
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * @return 处理成功返回true，与{@code Analysable#process(String)}的返回值相同
+     */
+    public boolean isHandled() {
+        return handled;
+    }
+
+    /**
+     * @return 一行中每条命令各自的结果，只有一条命令时为空
+     */
+    public List<DispatchResult> getParts() {
+        return parts;
+    }
+
+    @Override
+    public String toString() {
+        return "DispatchResult{" +
+                "content='" + content + '\'' +
+                ", command=" + command +
+                ", handled=" + handled +
+                (parts.isEmpty() ? "" : ", parts=" + parts) +
+                '}';
+    }
+}
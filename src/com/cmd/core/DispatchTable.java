@@ -0,0 +1,421 @@
+package com.cmd.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一条命令的分发表，在处理函数的集合发生变化时(注册、删除、排序)重新构建，构建完成后便不可更改
+ * <p>
+ * 以前每处理一条命令都要把所有的处理函数遍历一遍，逐个比较参数个数、逐个比较OnlyCare的值
+ * 分发表在注册时就把处理函数按照参数个数分好组，每个参数个数下再按照OnlyCare所在的位置分成若干个小组
+ * 同一小组中的处理函数以OnlyCare的值为键放进一张散列表中，分发时
+ * <ul>
+ * <li>通过参数个数直接定位到对应的分组
+ * <li>在每个小组中根据本次调用的参数计算散列值，直接找到OnlyCare的值与参数完全吻合的处理函数
+ * </ul>
+ * 没有OnlyCare的处理函数及可变参数的处理函数放在同一个小组中，每个小组中的处理函数都保持处理函数集合中的顺序
+ * 多个小组同时吻合时按照处理函数在集合中的序号把它们归并起来，所以调用的先后顺序(包括keepDispatch时)
+ * 与逐个遍历处理函数集合时完全相同，大多数调用只有一个小组吻合，不需要归并
+ * <p>
+ * 此外参数类型完全相同的处理函数被分配了相同的签名编号，一次分发中同一种签名的参数只需要转换一次
+ * <p>
+ * 关于子命令路由：从第一个参数开始连续标有OnlyCare的处理函数(如window max中的max)可以看做子命令，
+ * 这些连续的OnlyCare的值组成了一条路径，分发表为每条路径(及其前缀)预先筛选出一张更小的分发表，
+ * 其中只包含可能处理这条路径的处理函数，且路径上的参数已经被认为是吻合的，不会再参与散列及比较
+ * FastAnalyzer把这些路径也编入双数组字典树，匹配命令名的同时就能确定子命令，见{@code #route(String)}
+ *
+ * @version 2.5
+ */
+final class DispatchTable {
+
+    static final DispatchTable EMPTY = new DispatchTable(Collections.emptyList());
+
+    private static final Group[] NO_GROUPS = new Group[0];
+
+    private static final char PATH_SEPARATOR = '\0';   //路径中各个OnlyCare的值之间的分隔，用于生成路由的键
+
+    private final List<HandlingMethod> methods;     //只读的处理函数集合，保持排序后的顺序
+    private final Arity[] arities;                  //下标为参数个数，没有对应参数个数的处理函数为null
+    private final Group[] variadicGroups;           //参数个数超出arities范围时只有可变参数的处理函数可以处理
+    private final List<String[]> routePaths;        //所有子命令路径(包括前缀)
+    private final Map<String, DispatchTable> routes; //路由的键到筛选后的分发表的映射
+
+    /**
+     * @param methods 已经按OnlyCare个数排好序的处理函数集合，必须是只读的
+     */
+    DispatchTable(List<HandlingMethod> methods) {
+        this(methods, 0, true);
+    }
+
+    /**
+     * @param methods 已经按OnlyCare个数排好序的处理函数集合，必须是只读的
+     * @param resolved 前resolved个参数已经确定与OnlyCare吻合，不再参与分发
+     * @param routing 是否生成子命令路由
+     */
+    private DispatchTable(List<HandlingMethod> methods, int resolved, boolean routing) {
+        this.methods = methods;
+        List<Candidate> variadics = new ArrayList<>();
+        int maxArity = -1;
+        for (int i = 0; i < methods.size(); i++) {
+            HandlingMethod method = methods.get(i);
+            if (method.variadicType != HandlingMethod.VariableType.TYPE_IMMUTABLE) {
+                variadics.add(new Candidate(method, i, Candidate.NO_SIGNATURE));
+            } else if (method.getParamCount() > maxArity) {
+                maxArity = method.getParamCount();
+            }
+        }
+        arities = new Arity[maxArity + 1];
+        for (int arity = 0; arity <= maxArity; arity++) {
+            arities[arity] = Arity.build(methods, arity, variadics, resolved);
+        }
+        variadicGroups = variadics.isEmpty() ? NO_GROUPS
+                : new Group[]{new Group(null, variadics.toArray(new Candidate[variadics.size()]))};
+        if (!routing) {
+            routePaths = Collections.emptyList();
+            routes = Collections.emptyMap();
+            return;
+        }
+        List<String[]> paths = new ArrayList<>();
+        Map<String, DispatchTable> routes = new HashMap<>();
+        for (HandlingMethod method : methods) {
+            if (method.variadicType != HandlingMethod.VariableType.TYPE_IMMUTABLE) continue;
+            String[] path = subcommandPath(method);
+            //路径的每一个前缀都是一条路由
+            for (int length = 1; length <= path.length; length++) {
+                String[] prefix = Arrays.copyOf(path, length);
+                String key = routeKey(prefix);
+                if (routes.containsKey(key)) continue;
+                List<HandlingMethod> selected = new ArrayList<>();
+                for (HandlingMethod candidate : methods) {
+                    if (isOnPath(candidate, prefix)) selected.add(candidate);
+                }
+                paths.add(prefix);
+                routes.put(key, new DispatchTable(Collections.unmodifiableList(selected), length, false));
+            }
+        }
+        this.routePaths = Collections.unmodifiableList(paths);
+        this.routes = routes;
+    }
+
+    /**
+     * @return 从第一个参数开始连续标有OnlyCare的值，第一个参数没有OnlyCare时长度为0
+     */
+    private static String[] subcommandPath(HandlingMethod method) {
+        if (!method.isOnlyCareAnnotated()) return new String[0];
+        int length = 0;
+        while (length < method.getParamCount() && method.getOnlyCareByParam(length) != null) length++;
+        String[] path = new String[length];
+        for (int i = 0; i < length; i++) {
+            path[i] = method.getOnlyCareByParam(i);
+        }
+        return path;
+    }
+
+    /**
+     * @return 当前几个参数为path时，method是否有可能处理这次调用
+     */
+    private static boolean isOnPath(HandlingMethod method, String[] path) {
+        if (method.variadicType != HandlingMethod.VariableType.TYPE_IMMUTABLE) return true;
+        if (method.getParamCount() < path.length) return false;
+        if (!method.isOnlyCareAnnotated()) return true;
+        for (int i = 0; i < path.length; i++) {
+            String care = method.getOnlyCareByParam(i);
+            if (care != null && !care.equals(path[i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param path 子命令路径
+     * @return 路由的键
+     */
+    static String routeKey(String[] path) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < path.length; i++) {
+            if (i != 0) builder.append(PATH_SEPARATOR);
+            builder.append(path[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return 所有的子命令路径(包括前缀)，请不要修改返回的数组
+     */
+    List<String[]> getRoutePaths() {
+        return routePaths;
+    }
+
+    /**
+     * @param key 由{@code #routeKey(String[])}生成的键
+     * @return 前几个参数已经确定为这条路径时使用的分发表，没有这条路由返回自己
+     */
+    DispatchTable route(String key) {
+        DispatchTable table = routes.get(key);
+        return table == null ? this : table;
+    }
+
+    /**
+     * @return 只读的处理函数集合
+     */
+    List<HandlingMethod> getHandlingMethods() {
+        return methods;
+    }
+
+    boolean isEmpty() {
+        return methods.isEmpty();
+    }
+
+    /**
+     * @param params 本次调用的参数
+     * @return OnlyCare的值与参数吻合的全部处理函数，按照处理函数集合中的顺序排列，没有返回null
+     * 只有一个小组吻合时直接返回它的数组，请不要修改
+     */
+    Candidate[] candidates(String[] params) {
+        Candidate[] found = null;
+        for (Group group : groups(params.length)) {
+            Candidate[] members = group.find(params);
+            if (members == null) continue;
+            found = found == null ? members : merge(found, members);
+        }
+        return found;
+    }
+
+    /**
+     * 按照序号归并两个有序的数组
+     */
+    private static Candidate[] merge(Candidate[] a, Candidate[] b) {
+        Candidate[] merged = new Candidate[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            merged[k++] = a[i].ordinal < b[j].ordinal ? a[i++] : b[j++];
+        }
+        while (i < a.length) merged[k++] = a[i++];
+        while (j < b.length) merged[k++] = b[j++];
+        return merged;
+    }
+
+    /**
+     * @param paramCount 本次调用的参数个数
+     * @return 可能处理这次调用的小组
+     */
+    private Group[] groups(int paramCount) {
+        if (paramCount < arities.length && arities[paramCount] != null) {
+            return arities[paramCount].groups;
+        }
+        return variadicGroups;
+    }
+
+    /**
+     * @param paramCount 本次调用的参数个数
+     * @return 这个参数个数下不同的参数类型签名的个数
+     */
+    int signatureCount(int paramCount) {
+        if (paramCount < arities.length && arities[paramCount] != null) {
+            return arities[paramCount].signatureCount;
+        }
+        return 0;
+    }
+
+    /**
+     * 参数个数相同的所有处理函数
+     */
+    private static final class Arity {
+
+        final Group[] groups;
+        final int signatureCount;
+
+        private Arity(Group[] groups, int signatureCount) {
+            this.groups = groups;
+            this.signatureCount = signatureCount;
+        }
+
+        /**
+         * @return 参数个数为arity的分组，如果没有处理函数的参数个数为arity返回null
+         */
+        static Arity build(List<HandlingMethod> methods, int arity, List<Candidate> variadics, int resolved) {
+            List<Class<?>[]> signatures = new ArrayList<>();
+            List<int[]> positions = new ArrayList<>();          //每个小组的OnlyCare位置
+            List<List<Candidate>> members = new ArrayList<>();  //每个小组的成员，与positions一一对应
+            List<Candidate> plain = new ArrayList<>(variadics);
+            boolean found = false;
+            for (int i = 0; i < methods.size(); i++) {
+                HandlingMethod method = methods.get(i);
+                if (method.variadicType != HandlingMethod.VariableType.TYPE_IMMUTABLE
+                        || method.getParamCount() != arity) continue;
+                found = true;
+                Candidate candidate = new Candidate(method, i, signatureOf(method, signatures));
+                int[] position = carePositions(method, resolved);
+                if (position == null) {
+                    plain.add(candidate);
+                    continue;
+                }
+                int index = indexOf(positions, position);
+                if (index == -1) {
+                    positions.add(position);
+                    members.add(new ArrayList<>());
+                    index = positions.size() - 1;
+                }
+                members.get(index).add(candidate);
+            }
+            if (!found) return null;
+            List<Group> groups = new ArrayList<>(positions.size() + 1);
+            for (int i = 0; i < positions.size(); i++) {
+                List<Candidate> list = members.get(i);
+                groups.add(new Group(positions.get(i), list.toArray(new Candidate[list.size()])));
+            }
+            if (!plain.isEmpty()) {
+                plain.sort(Comparator.comparingInt(candidate -> candidate.ordinal));
+                groups.add(new Group(null, plain.toArray(new Candidate[plain.size()])));
+            }
+            return new Arity(groups.toArray(new Group[groups.size()]), signatures.size());
+        }
+
+        /**
+         * @return 处理函数的参数类型签名在signatures中的编号，没有就添加进去，无参的处理函数返回NO_SIGNATURE
+         */
+        private static int signatureOf(HandlingMethod method, List<Class<?>[]> signatures) {
+            if (method.method.getParameterCount() == 0) return Candidate.NO_SIGNATURE;
+            Class<?>[] types = method.getParameterTypes();
+            for (int i = 0; i < signatures.size(); i++) {
+                if (Arrays.equals(signatures.get(i), types)) return i;
+            }
+            signatures.add(types);
+            return signatures.size() - 1;
+        }
+
+        /**
+         * @param resolved 前resolved个参数已经确定吻合，不必再检查
+         * @return 处理函数上标有OnlyCare的参数位置，没有需要检查的OnlyCare返回null
+         */
+        private static int[] carePositions(HandlingMethod method, int resolved) {
+            if (!method.isOnlyCareAnnotated()) return null;
+            int count = 0;
+            for (int i = resolved; i < method.getParamCount(); i++) {
+                if (method.getOnlyCareByParam(i) != null) count++;
+            }
+            if (count == 0) return null;
+            int[] positions = new int[count];
+            for (int i = resolved, j = 0; i < method.getParamCount(); i++) {
+                if (method.getOnlyCareByParam(i) != null) positions[j++] = i;
+            }
+            return positions;
+        }
+
+        private static int indexOf(List<int[]> positions, int[] position) {
+            for (int i = 0; i < positions.size(); i++) {
+                if (Arrays.equals(positions.get(i), position)) return i;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * OnlyCare所在位置完全相同的一组处理函数，以OnlyCare的值为键组织成一张开放寻址的散列表
+     * 没有OnlyCare的小组不需要散列表，任何参数都能匹配到全部成员
+     */
+    static final class Group {
+
+        final int[] positions;          //OnlyCare所在的参数位置，没有OnlyCare时长度为0
+        private final Candidate[] all;  //没有OnlyCare时的全部成员
+
+        private final int mask;
+        private final int[] hashes;
+        private final String[][] keys;  //每个槽位上的OnlyCare的值，空槽位为null
+        private final Candidate[][] buckets;
+
+        Group(int[] positions, Candidate[] members) {
+            this.positions = positions == null ? new int[0] : positions;
+            if (positions == null) {
+                all = members;
+                mask = 0;
+                hashes = null;
+                keys = null;
+                buckets = null;
+                return;
+            }
+            all = null;
+            int capacity = Integer.highestOneBit(Math.max(members.length, 1) * 2 - 1) << 1;
+            mask = capacity - 1;
+            hashes = new int[capacity];
+            keys = new String[capacity][];
+            buckets = new Candidate[capacity][];
+            for (Candidate candidate : members) {
+                String[] key = new String[positions.length];
+                for (int i = 0; i < positions.length; i++) {
+                    key[i] = candidate.method.getOnlyCareByParam(positions[i]);
+                }
+                int hash = hash(key);
+                int slot = hash & mask;
+                while (keys[slot] != null && !Arrays.equals(keys[slot], key)) slot = (slot + 1) & mask;
+                if (keys[slot] == null) {
+                    keys[slot] = key;
+                    hashes[slot] = hash;
+                    buckets[slot] = new Candidate[]{candidate};
+                } else {
+                    Candidate[] old = buckets[slot];
+                    buckets[slot] = Arrays.copyOf(old, old.length + 1);
+                    buckets[slot][old.length] = candidate;
+                }
+            }
+        }
+
+        /**
+         * @param params 本次调用的参数，个数必须与小组中处理函数的参数个数相同
+         * @return OnlyCare的值与参数吻合的处理函数，按注册顺序排列，没有返回null
+         */
+        Candidate[] find(String[] params) {
+            if (all != null) return all;
+            int hash = 0;
+            for (int position : positions) {
+                hash = 31 * hash + params[position].hashCode();
+            }
+            hash = spread(hash);
+            for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && matches(keys[slot], params)) return buckets[slot];
+            }
+            return null;
+        }
+
+        private boolean matches(String[] key, String[] params) {
+            for (int i = 0; i < positions.length; i++) {
+                if (!key[i].equals(params[positions[i]])) return false;
+            }
+            return true;
+        }
+
+        private static int hash(String[] key) {
+            int hash = 0;
+            for (String value : key) {
+                hash = 31 * hash + value.hashCode();
+            }
+            return spread(hash);
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * 分发表中的一个处理函数
+     */
+    static final class Candidate {
+
+        static final int NO_SIGNATURE = -1;
+
+        final HandlingMethod method;
+        final int ordinal;              //在处理函数集合中的位置
+        final int signature;            //参数类型签名的编号，参数类型相同的处理函数编号相同
+
+        Candidate(HandlingMethod method, int ordinal, int signature) {
+            this.method = method;
+            this.ordinal = ordinal;
+            this.signature = signature;
+        }
+    }
+}
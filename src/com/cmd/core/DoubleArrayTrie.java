@@ -0,0 +1,343 @@
+package com.cmd.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.cmd.utils.Tokens;
+
+/**
+ * 双数组字典树，FastAnalyzer用它来根据命令名查找命令
+ * 与由Node组成的多级搜索树相比，双数组字典树把整棵树压缩进了base、check两个int数组中，
+ * 每个状态就是数组中的一个下标，从状态s经过字符c转移到状态t只需要一次加法和一次比较
+ * <pre>
+ *     t = base[s] + code(c)
+ *     check[t] == s 则转移成功，否则说明没有这条边
+ * </pre>
+ * 其中code(c)是字符c在所有命令名所用到的字符中的序号(从1开始)，通过一个以字符为下标的数组直接取得
+ * 所以每一个字符的转移都是O(1)的，且不需要为每个字符创建对象，内存占用与缓存命中率都优于Node组成的树
+ * <p>
+ * 除了命令名，字典树中还编入了子命令路由：命令名 + 分隔符 + 子命令 [+ 分隔符 + 子命令...]
+ * 其中子命令是处理函数上从第一个参数开始连续标注的OnlyCare的值(见{@code DispatchTable})
+ * 这样一次从左到右的扫描就能同时确定命令以及最深的子命令，如window max、remote add
+ * <p>
+ * 双数组字典树一经构建便不可修改，添加或删除命令时需要通过{@code #compile(Collection)}重新构建
+ * 构建时先用Node搭建出一棵临时的搜索树，再按层次遍历的顺序为每个节点寻找合适的base值
+ *
+ * @version 2.5
+ */
+public final class DoubleArrayTrie {
+
+    public static final int ROOT = 0;           //根节点的状态
+    public static final int NONE = -1;          //转移失败时返回的状态
+
+    private static final int FREE = -1;         //check数组中表示空闲的值
+    private static final int ROOT_CHECK = -2;   //根节点在check数组中的值
+
+    private final int[] codes;                  //字符到序号的映射，序号为0代表这个字符不在任何命令名中出现
+    private final int[] base;
+    private final int[] check;
+    private final Command[][] outputs;          //每个状态上保存的command，没有为null
+    private final Route[][] routes;             //每个状态上保存的子命令路由，没有为null
+    private final Command[] commands;           //所有的command，按照深度优先的顺序排列
+    private final int maxDepth;                 //最长的命令名(包括子命令路由)的长度
+
+    private final int nodeCount;                //构建时临时搜索树的节点数，不包括根节点
+    private final long nodeBytes;               //构建时临时搜索树的估算内存占用
+
+    private DoubleArrayTrie(int[] codes, int[] base, int[] check, Command[][] outputs, Route[][] routes,
+                            Command[] commands, int maxDepth, int nodeCount, long nodeBytes) {
+        this.codes = codes;
+        this.base = base;
+        this.check = check;
+        this.outputs = outputs;
+        this.routes = routes;
+        this.commands = commands;
+        this.maxDepth = maxDepth;
+        this.nodeCount = nodeCount;
+        this.nodeBytes = nodeBytes;
+    }
+
+    /**
+     * 根据给定的command构建双数组字典树，命令名及分隔符都相同的command请事先合并
+     * @param commands
+     * @return 构建好的双数组字典树
+     */
+    public static DoubleArrayTrie compile(Collection<Command> commands) {
+        //先搭建出临时的搜索树，同时统计字符集
+        Node rootNode = new Node('\0');
+        int maxChar = 0, maxDepth = 0;
+        for (Command command : commands) {
+            String name = command.commandName;
+            Node node = rootNode;
+            for (int i = 0, len = name.length(); i < len; i++) {
+                char c = name.charAt(i);
+                if (c > maxChar) maxChar = c;
+                node = node.findOrAddNodeToNextLayer(c);
+            }
+            node.addCommand(command);
+            if (name.length() > maxDepth) maxDepth = name.length();
+            //编入这个命令的子命令路由
+            for (String[] path : command.getDispatchTable().getRoutePaths()) {
+                String route = routeName(command, path);
+                if (route == null) continue;
+                node = rootNode;
+                for (int i = 0, len = route.length(); i < len; i++) {
+                    char c = route.charAt(i);
+                    if (c > maxChar) maxChar = c;
+                    node = node.findOrAddNodeToNextLayer(c);
+                }
+                node.addRoute(new Route(command, DispatchTable.routeKey(path)));
+                if (route.length() > maxDepth) maxDepth = route.length();
+            }
+        }
+        //为出现过的字符按从小到大的顺序编号，使得同一个节点的子节点的序号也是有序的
+        int[] codes = new int[commands.isEmpty() ? 0 : maxChar + 1];
+        markChars(rootNode, codes);
+        for (int c = 0, code = 0; c < codes.length; c++) {
+            if (codes[c] != 0) codes[c] = ++code;
+        }
+        return new Builder(codes).build(rootNode, maxDepth);
+    }
+
+    /**
+     * @param command
+     * @param path 子命令路径
+     * @return 用户输入这条子命令时的完整写法，无法编入字典树时返回null
+     * 子命令中含有分隔符、以引号开头或者命令没有分隔符时，分割出来的参数与子命令不一定相同，不能编入字典树
+     */
+    private static String routeName(Command command, String[] path) {
+        String delimiter = command.delimiter;
+        if (delimiter == null) return null;
+        StringBuilder builder = new StringBuilder(command.commandName);
+        for (String literal : path) {
+            if (literal.isEmpty() || literal.charAt(0) == Tokens.QUOTE || literal.contains(delimiter)) return null;
+            builder.append(delimiter).append(literal);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 将搜索树中出现过的字符在codes中标记出来
+     */
+    private static void markChars(Node node, int[] codes) {
+        node.iterateNextLayer(child -> {
+            codes[child.c] = 1;
+            markChars(child, codes);
+        });
+    }
+
+    /**
+     * @param state 当前状态
+     * @param c 输入的字符
+     * @return 转移后的状态，没有这条边返回{@code #NONE}
+     */
+    public int transition(int state, char c) {
+        if (c >= codes.length) return NONE;
+        int code = codes[c];
+        if (code == 0) return NONE;
+        int next = base[state] + code;
+        if (next >= check.length || check[next] != state) return NONE;
+        return next;
+    }
+
+    /**
+     * @param state
+     * @return 保存在这个状态上的command，没有返回null
+     */
+    public Command[] getCommands(int state) {
+        return outputs[state];
+    }
+
+    /**
+     * @param state
+     * @return 保存在这个状态上的子命令路由，没有返回null
+     */
+    public Route[] getRoutes(int state) {
+        return routes[state];
+    }
+
+    /**
+     * @return 最长的命令名的长度，分析时超过这个长度的部分不必再查找
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * 按深度优先的顺序遍历所有的command
+     * @param consumer
+     */
+    public void forEachCommand(Consumer<Command> consumer) {
+        for (Command command : commands) {
+            consumer.accept(command);
+        }
+    }
+
+    /**
+     * @return 所有command组成的新集合，可以随意修改
+     */
+    public List<Command> toList() {
+        List<Command> list = new ArrayList<>(commands.length + 1);
+        Collections.addAll(list, commands);
+        return list;
+    }
+
+    /**
+     * @return 构建时临时搜索树的节点数(不包括根节点)，也就是换成Node组成的树需要的节点数
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return 双数组的长度
+     */
+    public int getSize() {
+        return check.length;
+    }
+
+    /**
+     * 估算换成Node组成的搜索树需要占用的内存，按开启压缩指针的64位虚拟机计算，不包括command对象本身
+     * @return 字节数
+     */
+    public long estimateNodeTreeBytes() {
+        return nodeBytes;
+    }
+
+    /**
+     * 估算双数组字典树占用的内存，按开启压缩指针的64位虚拟机计算，不包括command对象本身
+     * @return 字节数
+     */
+    public long estimateBytes() {
+        return arrayBytes(codes.length, 4) + arrayBytes(base.length, 4)
+                + arrayBytes(check.length, 4) + arrayBytes(outputs.length, 4) + arrayBytes(routes.length, 4)
+                + arrayBytes(commands.length, 4);
+    }
+
+    static long arrayBytes(int length, int elementSize) {
+        return align(16 + (long) length * elementSize);
+    }
+
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * 构建双数组的过程，按层次遍历的顺序为每一个有子节点的节点寻找一个base值，
+     * 使得它所有的子节点在数组中的位置都是空闲的
+     */
+    private static final class Builder {
+
+        private final int[] codes;
+        private int[] base;
+        private int[] check;
+        private Command[][] outputs;
+        private Route[][] routes;
+        private int size = 1;               //已经用到的最大位置+1
+        private int nextCheckPos = 1;       //第一个可能空闲的位置，寻找base时从这里开始
+
+        Builder(int[] codes) {
+            this.codes = codes;
+            base = new int[64];
+            check = new int[64];
+            Arrays.fill(check, FREE);
+            outputs = new Command[64][];
+            routes = new Route[64][];
+            check[ROOT] = ROOT_CHECK;
+        }
+
+        DoubleArrayTrie build(Node rootNode, int maxDepth) {
+            List<Command> order = new ArrayList<>();
+            ArrayDeque<Node> nodes = new ArrayDeque<>();
+            ArrayDeque<Integer> states = new ArrayDeque<>();
+            nodes.add(rootNode);
+            states.add(ROOT);
+            int nodeCount = 0;
+            long nodeBytes = 0;
+            while (!nodes.isEmpty()) {
+                Node node = nodes.poll();
+                int state = states.poll();
+                outputs[state] = node.commands;
+                routes[state] = node.routes;
+                if (node != rootNode) {
+                    nodeCount++;
+                    //对象头12字节 + char + int + 三个引用，对齐后为32字节
+                    nodeBytes += 32;
+                }
+                if (node.nextLayer != null) {
+                    nodeBytes += arrayBytes(node.nextLayer.length, 4);
+                }
+                if (node.realLayerLen == 0) continue;
+                int begin = findBase(node);
+                base[state] = begin;
+                for (int i = 0; i < node.realLayerLen; i++) {
+                    Node child = node.nextLayer[i];
+                    int next = begin + codes[child.c];
+                    check[next] = state;
+                    if (next >= size) size = next + 1;
+                    nodes.add(child);
+                    states.add(next);
+                }
+                while (nextCheckPos < check.length && check[nextCheckPos] != FREE) nextCheckPos++;
+            }
+            //按深度优先的顺序收集command，与Node组成的树遍历顺序保持一致
+            rootNode.iterateChild(order::add);
+            return new DoubleArrayTrie(codes, Arrays.copyOf(base, size), Arrays.copyOf(check, size),
+                    Arrays.copyOf(outputs, size), Arrays.copyOf(routes, size), order.toArray(new Command[order.size()]),
+                    maxDepth, nodeCount, nodeBytes);
+        }
+
+        /**
+         * @param node 至少有一个子节点的节点
+         * @return 能够容纳node所有子节点的base值
+         */
+        private int findBase(Node node) {
+            int firstCode = codes[node.nextLayer[0].c];
+            int lastCode = codes[node.nextLayer[node.realLayerLen - 1].c];
+            outer:
+            for (int pos = Math.max(nextCheckPos, firstCode); ; pos++) {
+                ensureCapacity(pos - firstCode + lastCode + 1);
+                if (check[pos] != FREE) continue;
+                int begin = pos - firstCode;
+                for (int i = 1; i < node.realLayerLen; i++) {
+                    if (check[begin + codes[node.nextLayer[i].c]] != FREE) continue outer;
+                }
+                return begin;
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= check.length) return;
+            int newLength = Math.max(capacity, check.length * 2);
+            int oldLength = check.length;
+            base = Arrays.copyOf(base, newLength);
+            check = Arrays.copyOf(check, newLength);
+            Arrays.fill(check, oldLength, newLength, FREE);
+            outputs = Arrays.copyOf(outputs, newLength);
+            routes = Arrays.copyOf(routes, newLength);
+        }
+    }
+
+    /**
+     * 子命令路由，到达这个路由说明用户输入的是command的某个子命令
+     */
+    public static final class Route {
+
+        final Command command;      //子命令所属的命令
+        final String key;           //路由的键，见DispatchTable#routeKey(String[])
+
+        Route(Command command, String key) {
+            this.command = command;
+            this.key = key;
+        }
+
+        public Command getCommand() {
+            return command;
+        }
+    }
+}
@@ -1,38 +1,46 @@
 package com.cmd.core;
 
 import com.cmd.annotations.Outline;
-import com.cmd.utils.CmdUtils;
+import com.cmd.utils.Tokens;
 
 import java.lang.reflect.Method;
-import java.util.Arrays;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * 比CommandAnalyzer性能更好的命令解析器，针对命令匹配、字串分割做了额外的优化
- * 不同于CommandAnalyzer，FastAnalyzer建立了多级索引(一棵搜索树)，对于每一层的索引，
- * 使用二分搜索做查找，使得在命令定义比较密集的情况下查找效率比CommandAnalyzer高三到四倍
- * 同时对内存的消耗也比使用hashMap低得多，兼顾性能与内存消耗<p>
- * FastAnalyzer针对一种特定情况对字符串分割做出了优化，当命令使用一个字符作为分隔符时
- * FastAnalyzer对字串的分割效率理想状态下能达到jdk给出的分割算法的三到四倍(大部分命令的分隔符都是单字符的)
+ * 不同于CommandAnalyzer，FastAnalyzer建立了多级索引(一棵双数组字典树{@code DoubleArrayTrie})，
+ * 每匹配一个字符只需要一次数组访问，使得在命令定义比较密集的情况下查找效率比CommandAnalyzer高得多
+ * 同时对内存的消耗也比使用hashMap或由Node组成的树低得多，兼顾性能与内存消耗<p>
+ * FastAnalyzer直接在用户输入上分割参数，不论分隔符有多长都不使用正则表达式，也不会复制用户输入
+ * 分割时只记录每个参数的起止位置，真正需要参数时才创建String(支持引号，见{@code Tokens})
  * 所以，两部分结合起来，在分析阶段性能的提升是显著的，但无可避免的在其他方面做出了妥协<p>
- * 由于使用树来管理command对象，所以无法实现Analysable接口的getCommands方法，这是框架设计上的一个失误
- * 由于使用树来管理command对象，导致其在内存上的消耗一定是比CommandAnalyzer要高很多的<p>
+ * 由于使用树来管理command对象，所以无法实现Analysable接口的getCommands方法，这是框架设计上的一个失误<p>
  *
  * 在框架设计之初，没有考虑到会走到今天这一步，所以使得FastAnalyzer与Analysable接口有些许的不兼容
- * 可能会导致某些额外功能的不稳定 如代码提示器或各种handler，今后的版本将着力修复
+ * 可能会导致某些额外功能的不稳定 如代码提示器或各种handler，今后的版本将着力修复<p>
  *
- * @version 2.4
+ * 字典树中还编入了子命令路由(如window max)，分析时一次扫描就能同时确定命令及子命令，
+ * 分发时直接使用子命令对应的较小的分发表，不必再比较OnlyCare的值<p>
+ *
+ * 双数组字典树以只读快照的形式通过一个volatile引用发布，修改时在命令集合的拷贝上完成修改，
+ * 再重新构建一棵双数组字典树整体替换，分析命令的线程永远看到的是一棵完整且不会再变化的树
+ *
+ * @version 2.5
  * Created by congxiaoyao on 2016/2/25.
  */
 public class FastAnalyzer extends CommandAnalyzer{
 
-    private static FastAnalyzer fastAnalyzer;
+    private static volatile FastAnalyzer fastAnalyzer;
 
-    private Node rootNode;
+    private volatile DoubleArrayTrie trie;   //当前发布的搜索树
 
-    private int realTreeHeight = 0;          //搜索树的高度，不包括rootNode那一层
+    //延迟解析参数时使用，作为字段保存避免每次分析都生成新的对象
+    private final AnalysisResult.ParameterParser parameterParser = this::analyzeCommandParam;
 
     /**
      * @return 单例模式，获取CommandAnalyzer的实例
@@ -65,9 +73,7 @@ public class FastAnalyzer extends CommandAnalyzer{
      */
     private FastAnalyzer() {
         super(false);
-        rootNode = new Node('\0');
-        outlineMap = new TreeMap<>();
-        initTypesMap();
+        trie = DoubleArrayTrie.compile(new ArrayList<>());
     }
 
     /**
@@ -76,27 +82,24 @@ public class FastAnalyzer extends CommandAnalyzer{
      * @return
      */
     @Override
-    public CommandAnalyzer addHandlingObject(Object handlingObject) {
+    public synchronized CommandAnalyzer addHandlingObject(Object handlingObject) {
+        List<Command> commands = trie.toList();
         Method[] methods = handlingObject.getClass().getDeclaredMethods();
+        Lock lock = lockOf(handlingObject);
         for (Method method : methods) {
             //尝试根据method上的注解生成Command对象
             Command temp = getCommandByMethod(method);
             if (temp == null) continue;
-            //赋值invoker以便反射调用
-            temp.getHandlingMethods().get(0).invoker = handlingObject;
-            //将command对象添加到搜索树中
             try {
-                addCommandToRootNode(temp);
-                int cmdNameLen = temp.commandName.length();
-                if (cmdNameLen > realTreeHeight) {
-                    realTreeHeight = cmdNameLen;
-                }
+                //绑定invoker以便调用
+                temp.getHandlingMethods().get(0).bind(handlingObject, lock);
+                addCommandToList(commands, temp);
             } catch (IllegalHandlingMethodException e) {
                 e.printStackTrace();
             }
         }
-        //按OnlyCare个数给每个command里的handlingMethods排序
-        sortHandlingMethods();
+        //重新构建搜索树
+        trie = DoubleArrayTrie.compile(commands);
         //添加outline
         if (!handlingObject.getClass().isAnnotationPresent(Outline.class)) return this;
         Outline outline = handlingObject.getClass().getAnnotation(Outline.class);
@@ -109,44 +112,63 @@ public class FastAnalyzer extends CommandAnalyzer{
     }
 
     /**
-     * 将command对象添加到rootNode所维护的树中
+     * 将command对象添加到还未构建成搜索树的命令集合中
+     * @param commands 还未发布的命令集合
      * @param command
      * @throws IllegalHandlingMethodException
      */
-    private void addCommandToRootNode(Command command) throws IllegalHandlingMethodException {
-        char[] content = command.commandName.toCharArray();
-        Node node = rootNode;
-        for (char c : content) {
-            node = node.findOrAddNodeToNextLayer(c);
-        }
-        //如果最终的node中没有command对象直接添加进去
-        if (node.commands == null) {
-            node.addCommand(command);
+    private void addCommandToList(List<Command> commands, Command command) throws IllegalHandlingMethodException {
+        int index = commands.indexOf(command);
+        //如果找不到相同的command就直接添加进去
+        if (index == -1) {
+            commands.add(command);
             return;
         }
-        //如果node中能找到相同的command 就只添加handlingMethod
-        Command[] commands = node.commands;
-        for (Command existed : commands) {
-            if(existed.isDelimiterEquals(command.delimiter)){
-                existed.addHandlingMethod(command.getHandlingMethods().get(0));
-                return;
-            }
-        }
-        //如果找不到就直接添加进去
-        node.addCommand(command);
+        //如果能找到相同的command 就只在它的拷贝中添加handlingMethod并按OnlyCare个数排序
+        Command existed = commands.get(index).copy();
+        existed.addHandlingMethod(command.getHandlingMethods().get(0));
+        existed.sortHandlingMethod();
+        commands.set(index, existed);
     }
+
     /**
      * 对于类内维护的查找树中的所有的command，对其维护的HandlingMethods按OnlyCare数量排序
+     * 在拷贝上排序后重新构建查找树，已经发布的Command不会被改动
      */
     @Override
-    public void sortHandlingMethods() {
-        rootNode.iterateChild((command -> command.sortHandlingMethod()));
+    public synchronized void sortHandlingMethods() {
+        List<Command> commands = trie.toList();
+        for (int i = 0, len = commands.size(); i < len; i++) {
+            Command command = commands.get(i).copy();
+            command.sortHandlingMethod();
+            commands.set(i, command);
+        }
+        trie = DoubleArrayTrie.compile(commands);
+    }
+
+    /**
+     * 统计当前的搜索树在双数组字典树及由Node组成的树两种实现下的规模及估算的内存占用
+     * 内存按开启压缩指针的64位虚拟机估算，不包括command对象本身
+     * @return 统计报告
+     */
+    public String getIndexReport() {
+        DoubleArrayTrie trie = this.trie;
+        int[] count = {0};
+        trie.forEachCommand(command -> count[0]++);
+        return "commands-->" + count[0] + '\n' +
+                "Node tree-->" + trie.getNodeCount() + " nodes, about " +
+                trie.estimateNodeTreeBytes() + " bytes\n" +
+                "double array trie-->" + trie.getSize() + " slots, about " +
+                trie.estimateBytes() + " bytes";
     }
 
     /**
+     * 计算由Node组成的搜索树的层数，FastAnalyzer已经改用双数组字典树，不再持有Node组成的树，保留此函数仅为兼容
+     * 查看当前查找树的规模请使用{@code #getIndexReport()}
      * @param node
      * @return 计算搜索树的层数，如果传入rootNode，返回的结果包括rootNode那一层
      */
+    @Deprecated
     public int calculateMaxTreeHeight(Node node) {
         if (node.realLayerLen == 0) return 1;
         final int[] max = {-1};
@@ -159,37 +181,83 @@ public class FastAnalyzer extends CommandAnalyzer{
 
     /**
      * 通过FastAnalyzer维护的搜索树来查找相应的命令并解析
+     * 分析过程只读取搜索树，不会修改树中的任何command对象
      * @param content 用户提交的字符串
-     * @return
+     * @return 匹配成功返回新的AnalysisResult对象，否则返回null
+     */
+    @Override
+    public AnalysisResult analyze(String content) {
+        return analyze((CharSequence) content);
+    }
+
+    /**
+     * 通过FastAnalyzer维护的搜索树来查找相应的命令，参数会在处理函数真正需要时才被解析出来
+     * @param content 用户提交的字符序列，在命令处理完成之前不能被修改
+     * @return 匹配成功返回新的AnalysisResult对象，否则返回null
+     */
+    @Override
+    public AnalysisResult analyze(CharSequence content) {
+        Object found = find(content, true);
+        if (found == null) return null;
+        //同时确定了子命令，分发时直接使用子命令的分发表
+        if (found instanceof DoubleArrayTrie.Route) {
+            DoubleArrayTrie.Route route = (DoubleArrayTrie.Route) found;
+            return new AnalysisResult(route.command, content, parameterParser, route.key);
+        }
+        return new AnalysisResult((Command) found, content, parameterParser, null);
+    }
+
+    /**
+     * 逐个字符的在双数组字典树上转移来查找用户输入对应的命令，整个过程不会创建任何对象
+     * @param content 用户提交的字符序列
+     * @return 匹配到的命令，这是所有线程共享的对象，请不要修改它，没有匹配到返回null
      */
     @Override
-    public Command analyze(String content) {
+    public Command lookup(CharSequence content) {
+        return (Command) find(content, false);
+    }
+
+    /**
+     * 逐个字符的在双数组字典树上转移，先找到用户输入对应的命令，如果需要的话继续向后寻找最深的子命令路由
+     * @param content 用户提交的字符序列
+     * @param routing 是否寻找子命令路由
+     * @return 匹配到的最深的子命令路由，没有子命令时返回匹配到的命令，都没有匹配到返回null
+     */
+    private Object find(CharSequence content, boolean routing) {
+        DoubleArrayTrie trie = this.trie;
         //计算实际需要分析的字符串的长度
-        int len = content.length() > realTreeHeight ? realTreeHeight : content.length();
-        char[] inputs = content.toCharArray();
-        int nowIndex = -1;
-        Node finder = new Node(rootNode.c);
-        Node nowNode = rootNode;
+        int len = Math.min(content.length(), trie.getMaxDepth());
+        int state = DoubleArrayTrie.ROOT;
+        Command matched = null;
+        DoubleArrayTrie.Route route = null;
         for (int i = 0; i < len; i++) {
-            finder.c = inputs[i];
-            //如果没有下一层，说明没有匹配到命令
-            if(nowNode.nextLayer == null) return null;
-            nowNode = nowNode.findNodeInNextLayer(finder);
-            //如果下一层中没想要的东西 说明没匹配到
-            if(nowNode == null) return null;
-            nowIndex++;
-            Command[] commands = nowNode.commands;
-            if (nowNode.commands == null) continue;
-            //在当前的node中保存有command对象，尝试匹配下看看是不是用户输入的这条
-            for (Command command : commands) {
-                //如果是用户输入的，可以继续去分析具体输入的参数了
-                if (isDelimiterMatch(command.delimiter, content, nowIndex+1)) {
-                    analyzeCommandParam(command, inputs, content);
-                    return command;
+            state = trie.transition(state, content.charAt(i));
+            //如果没有这条边，说明不会再有更长的匹配了
+            if (state == DoubleArrayTrie.NONE) break;
+            if (matched == null) {
+                Command[] commands = trie.getCommands(state);
+                if (commands == null) continue;
+                //在当前的状态中保存有command对象，尝试匹配下看看是不是用户输入的这条
+                for (Command command : commands) {
+                    if (isDelimiterMatch(command.delimiter, content, i + 1)) {
+                        if (!routing) return command;
+                        matched = command;
+                        break;
+                    }
+                }
+                continue;
+            }
+            //已经确定了命令，继续寻找属于这个命令的子命令路由
+            DoubleArrayTrie.Route[] routes = trie.getRoutes(state);
+            if (routes == null) continue;
+            for (DoubleArrayTrie.Route candidate : routes) {
+                if (candidate.command == matched && isDelimiterMatch(matched.delimiter, content, i + 1)) {
+                    route = candidate;
+                    break;
                 }
             }
         }
-        return null;
+        return route != null ? route : matched;
     }
 
     /**
@@ -199,106 +267,101 @@ public class FastAnalyzer extends CommandAnalyzer{
      * @param startIndex 用户输入中疑似分隔符的起始位置
      * @return 如果成功匹配返回true
      */
-    private boolean isDelimiterMatch(String delimiter, String content, int startIndex) {
-        if (content.length() == startIndex) return true;
+    private static boolean isDelimiterMatch(String delimiter, CharSequence content, int startIndex) {
+        int contentLen = content.length();
+        if (contentLen == startIndex) return true;
         if(delimiter == null) return true;
         int delimiterLen = delimiter.length();
-        if (delimiterLen + startIndex > content.length()) return false;
-        return delimiter.equals(content.substring(startIndex, startIndex + delimiterLen));
+        if (delimiterLen + startIndex > contentLen) return false;
+        for (int i = 0; i < delimiterLen; i++) {
+            if (delimiter.charAt(i) != content.charAt(startIndex + i)) return false;
+        }
+        return true;
     }
 
     /**
      * 已经确定用户输入content是命令command，现在要根据command中的分隔符信息从content中解析出参数来
      * @param command
-     * @param content
+     * @param sequence
+     * @return 解析出来的参数，没有参数返回null
      */
-    private void analyzeCommandParam(Command command, char[] content, String sContent) {
+    private String[] analyzeCommandParam(Command command, CharSequence sequence) {
         int cmdNameLen = command.commandName.length();
-        int contentLen = content.length;
         //输入了一个无参命令
-        if (cmdNameLen == contentLen) command.parameters = null;
+        if (cmdNameLen == sequence.length()) return null;
         //无分隔符情况
-        else if (command.delimiter == null) {
-            String param = new String(content, cmdNameLen, contentLen - cmdNameLen);
-            command.parameters = new String[]{param};
+        if (command.delimiter == null) {
+            return new String[]{sequence.subSequence(cmdNameLen, sequence.length()).toString()};
         }
-        //通过分隔符将参数取出赋给command对象
+        //通过分隔符将参数取出
         //输入可能为 commandName_XXX_XXX_XXX或commandName_
-        //分隔符为一个字符的按优化算法分割
-        else if (command.delimiter.length() == 1)
-            analyzeCommandParamBranch(command, content, cmdNameLen);
-        //分隔符长度大于1的按jdk提供的分割算法分割
-        else analyzeCommandParamBranch(command, sContent);
+        return analyzeCommandParamBranch(command, sequence, cmdNameLen);
     }
 
     /**
      * 解析命令参数的一个逻辑上的分支，专门处理 输入可能为 commandName_XXX_XXX_XXX或commandName_的情况
-     * @param command 要求分隔符长度最好为2或以上，因为对长度为1的分隔符提供了优化的分割算法
+     * 第一个分隔符之前的内容被当做命令名
+     * @param command
      * @param content
+     * @return 解析出来的参数，没有参数返回null
      */
-    public void analyzeCommandParamBranch(Command command, String content) {
-        String[] params = content.split(command.delimiter);
-        if (params.length == 1) command.parameters = null;
-        else {
-            String[] realParams = new String[params.length - 1];
-            System.arraycopy(params, 1, realParams, 0, realParams.length);
-            command.parameters = realParams;
-        }
+    public String[] analyzeCommandParamBranch(Command command, String content) {
+        String delimiter = command.delimiter;
+        int cmdNameEnd = Tokens.indexOf(content, delimiter, 0, content.length());
+        if (cmdNameEnd == -1) return null;
+        return splitParameters(content, cmdNameEnd + delimiter.length(), delimiter);
     }
 
     /**
      * 解析命令参数的一个逻辑上的分支，专门处理 输入可能为 commandName_XXX_XXX_XXX或commandName_的情况
-     * @param command 要求分隔符长度必须为1，这里针对jdk中的分割算法做了优化
+     * @param command
      * @param content
      * @param cmdNameLen
+     * @return 解析出来的参数，没有参数返回null
      */
-    public void analyzeCommandParamBranch(Command command, char[] content, int cmdNameLen) {
-        String[] params = CmdUtils.split(content, cmdNameLen + 1, command.delimiter.charAt(0));
-        if (params.length == 0) {
-            command.parameters = null;
-        }
-        else command.parameters = params;
+    public String[] analyzeCommandParamBranch(Command command, char[] content, int cmdNameLen) {
+        return analyzeCommandParamBranch(command, CharBuffer.wrap(content), cmdNameLen);
     }
 
     /**
-     * 禁止父类函数对长度为1的分割符做转义操作
-     * @param delimiter
-     * @return 见父类注解
+     * 与上个函数相同，但直接在字符序列上分割，不需要先把用户输入复制成char数组
+     * @param command
+     * @param content
+     * @param cmdNameLen
+     * @return 解析出来的参数，没有参数返回null
      */
-    @Override
-    protected String reanalyseDelimiter(String delimiter, Method method) {
-        if (delimiter.length() == 1) {
-            return delimiter;
-        }
-        return super.reanalyseDelimiter(delimiter,method);
+    public String[] analyzeCommandParamBranch(Command command, CharSequence content, int cmdNameLen) {
+        String delimiter = command.delimiter;
+        return splitParameters(content, cmdNameLen + delimiter.length(), delimiter);
     }
 
     @Override
     public void forEachCommand(Consumer<Command> consumer) {
-        rootNode.iterateChild(consumer);
+        trie.forEachCommand(consumer);
     }
 
     @Override
-    public void removeCommand(Command command) {
-        char[] chars = command.commandName.toCharArray();
-        Node finder = new Node(rootNode.c);
-        Node nowNode = rootNode;
-        for (char c : chars) {
-            finder.c = c;
-            nowNode = nowNode.findNodeInNextLayer(finder);
-            if (nowNode == null) {
-                return;
-            }
+    public synchronized void removeCommand(Command command) {
+        List<Command> commands = trie.toList();
+        if (commands.remove(command)) {
+            trie = DoubleArrayTrie.compile(commands);
         }
-        Command[] commands = nowNode.commands;
-        if (commands == null) return;
-        for (int i = 0; i < commands.length; i++) {
-            Command existed = commands[i];
-            if (existed.isDelimiterEquals(command.delimiter)) {
-                nowNode.removeCommand(i);
-                return;
-            }
+    }
+
+    @Override
+    public synchronized List<Command> removeHandlingMethods(Predicate<HandlingMethod> filter) {
+        List<Command> commands = trie.toList();
+        List<Command> emptied = new ArrayList<>();
+        boolean changed = false;
+        for (int i = 0, len = commands.size(); i < len; i++) {
+            Command command = commands.get(i).copy();
+            if (!command.removeHandlingMethods(filter)) continue;
+            commands.set(i, command);
+            changed = true;
+            if (command.getHandlingMethods().isEmpty()) emptied.add(command);
         }
+        if (changed) trie = DoubleArrayTrie.compile(commands);
+        return emptied;
     }
 
     @Deprecated
@@ -1,24 +1,47 @@
 package com.cmd.core;
 
+import com.cmd.annotations.Blocking;
 import com.cmd.annotations.CmdDef;
+import com.cmd.annotations.CpuBound;
+import com.cmd.annotations.OnCallerThread;
 import com.cmd.annotations.OnlyCare;
+import com.cmd.annotations.Serialized;
 import com.cmd.annotations.SingleParam;
 import com.cmd.utils.CmdUtils;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
 
 /**
  * 与命令绑定的函数称作处理函数，此类定义了一个处理函数所拥有的各种属性
- * 可通过以下注解绑定命令与处理函数
+ * 可通过CmdDef、CommandName、Delimiter、Description等注解绑定命令与处理函数
+ * <p>
+ * 处理函数在注册时通过{@code #bind(Object, Lock)}与invoker绑定，绑定时会预先生成一个MethodHandle，
+ * 其中已经包含了invoker及准确的方法签名，之后每次调用都通过这个MethodHandle完成，
+ * 省去了反射调用时的访问检查，使得JIT可以将调用内联
+ * <p>
+ * 对于固定参数个数的处理函数，绑定时为每个参数确定好转换器，并把类型转换(见{@code Arguments})拼接到MethodHandle之前，
+ * 生成一个直接接受String数组的MethodHandle，基本数据类型的参数不需要装箱，也不需要额外的Object数组
+ * <p>
+ * 异步处理命令时处理函数在哪个执行器中调用由它上面的{@code Blocking}、{@code CpuBound}、{@code OnCallerThread}注解决定，
+ * 见{@code Execution}
+ * <p>
+ * 标有{@code Serialized}的处理函数(或所在的类标有Serialized)在调用时持有invoker的锁，同一个invoker中的这些处理函数依次执行
  *
  * @see com.cmd.annotations.CmdDef
  * @see com.cmd.annotations.CommandName
  * @see com.cmd.annotations.Delimiter
  * @see com.cmd.annotations.Description
  *
- * @version 2.1
+ * @version 2.5
  * Created by congxiaoyao on 2016/2/19.
  */
 public class HandlingMethod {
@@ -31,9 +54,17 @@ public class HandlingMethod {
     private Class<?>[] parameterTypes;  //处理函数的参数类型
     Object invoker;                     //用于反射调用
     VariableType variadicType;          //处理函数的参数的属性
+    final Execution execution;          //异步处理命令时在哪里调用这个处理函数
+    private Lock lock;                  //invoker的锁，只有标有Serialized的处理函数才有
+    private MethodHandle handle;        //与invoker绑定后的MethodHandle，类型为(Object[])void
+    private MethodHandle parsedHandle;  //拼接了参数类型转换的MethodHandle，类型为(String[])void，只有固定参数个数的处理函数才有
+    private ArgumentConverter<?>[] converters;  //每个参数的转换器，注册时确定，与parsedHandle对应
+
+    private static final Object[] NO_ARGS = new Object[0];
 
     public HandlingMethod(Method method) throws BadDefinitionException {
         this.method = method;
+        execution = Execution.of(method);
         //分析VariadicType的值
         variadicType = VariableType.TYPE_IMMUTABLE;
         //检查处理函数参数类型是不是可变参数类型（Command类型或String数组类型）或要将多参当一参处理
@@ -132,6 +163,15 @@ public class HandlingMethod {
                 }
             }
         }
+        //将多个决定执行器的注解混合使用
+        int executionAnnotations = 0;
+        for (Class<? extends Annotation> annotation : Execution.ANNOTATIONS) {
+            if (method.isAnnotationPresent(annotation)) executionAnnotations++;
+        }
+        if (executionAnnotations > 1) {
+            throw new BadDefinitionException("Blocking、CpuBound、OnCallerThread注解只能使用其中一个\n" +
+                    BadDefinitionException.DECLARE_ERROR, method.toString());
+        }
         if (method.isAnnotationPresent(SingleParam.class)) {
             if(method.getParameterCount() == 1 && method.getParameterTypes()[0] == String.class) ;
             else throw new BadDefinitionException("SingleParam注解非法定义\n" +
@@ -161,18 +201,18 @@ public class HandlingMethod {
      * 判断这个处理函数是否合法
      * @return 如果处理函数中同时存在可变参数类型（String数组或Command类型）及
      * 固定参数类型（基本参数类型）则不合法
-     * 如果存在基本参数类型或其包装类型或Command类型或String数组类型之外的参数则不合法
+     * 如果存在没有转换器的类型(见{@code ArgumentConverter})且不是Command类型或String数组类型的参数则不合法
      */
     public boolean isLegal() {
         Class<?>[] types = getParameterTypes();
         if (types.length > 1) {
             for (Class<?> type : types) {
-                if (CmdUtils.isVarTypes(types[0]) || !CmdUtils.isBaseTypes(type)) {
+                if (CmdUtils.isVarTypes(types[0]) || Arguments.converterFor(type) == null) {
                     return false;
                 }
             }
         } else if (types.length == 1) {
-            return CmdUtils.isBaseTypes(types[0]) || CmdUtils.isVarTypes(types[0]);
+            return Arguments.converterFor(types[0]) != null || CmdUtils.isVarTypes(types[0]);
         }
         return true;
     }
@@ -199,6 +239,127 @@ public class HandlingMethod {
         return paramCount;
     }
 
+    /**
+     * @return 处理函数或者invoker的类上标有Serialized注解返回true，绑定invoker之前只检查处理函数
+     */
+    public boolean isSerialized() {
+        return lock != null || method.isAnnotationPresent(Serialized.class);
+    }
+
+    /**
+     * 将处理函数与invoker绑定，预先生成调用用的MethodHandle
+     * 生成的MethodHandle已经绑定了invoker，参数以Object数组的形式传入，返回值被丢弃
+     * @param invoker 处理函数所在的类的实例，对于静态处理函数也可以传入
+     * @param lock invoker的锁，同一个invoker中的处理函数必须传入同一把锁，处理函数不是Serialized的时候会被忽略
+     * @throws IllegalHandlingMethodException 无法访问这个处理函数时抛出
+     */
+    void bind(Object invoker, Lock lock) throws IllegalHandlingMethodException {
+        try {
+            method.setAccessible(true);
+            MethodHandle target = MethodHandles.lookup().unreflect(method);
+            if (!Modifier.isStatic(method.getModifiers())) {
+                target = target.bindTo(invoker);
+            }
+            int count = method.getParameterCount();
+            if (variadicType == VariableType.TYPE_IMMUTABLE && count > 0) {
+                bindParsed(target, count);
+            }
+            target = target.asType(MethodType.genericMethodType(count).changeReturnType(void.class));
+            this.handle = target.asSpreader(Object[].class, count);
+            this.invoker = invoker;
+            boolean serialized = method.isAnnotationPresent(Serialized.class)
+                    || invoker.getClass().isAnnotationPresent(Serialized.class);
+            this.lock = serialized ? lock : null;
+        } catch (IllegalAccessException | SecurityException e) {
+            throw new IllegalHandlingMethodException(method.toString());
+        }
+    }
+
+    /**
+     * 为固定参数个数的处理函数在target之前拼接每个参数的类型转换，生成(String[])void类型的parsedHandle
+     * @param target 已经绑定了invoker的MethodHandle
+     * @param count 参数个数
+     */
+    private void bindParsed(MethodHandle target, int count) throws IllegalHandlingMethodException {
+        Class<?>[] types = getParameterTypes();
+        ArgumentConverter<?>[] converters = new ArgumentConverter<?>[count];
+        MethodHandle[] filters = new MethodHandle[count];
+        for (int i = 0; i < count; i++) {
+            converters[i] = Arguments.converterFor(types[i]);
+            if (converters[i] == null) throw new IllegalHandlingMethodException(method.toString());
+            filters[i] = Arguments.parser(types[i], converters[i]);
+        }
+        Class<?>[] strings = new Class<?>[count];
+        Arrays.fill(strings, String.class);
+        MethodHandle parsed = MethodHandles.filterArguments(target, 0, filters);
+        parsed = parsed.asType(MethodType.methodType(void.class, strings));
+        this.parsedHandle = parsed.asSpreader(String[].class, count);
+        this.converters = converters;
+    }
+
+    /**
+     * 检查参数能否转换为处理函数所需的类型，不会抛出异常
+     * @param args 本次调用的参数，个数必须与处理函数的参数个数相同
+     * @return 所有参数都能转换返回true
+     */
+    boolean accepts(String[] args) {
+        ArgumentConverter<?>[] converters = this.converters;
+        for (int i = 0; i < converters.length; i++) {
+            String arg = args[i];
+            if (!converters[i].accepts(arg, 0, arg.length())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 通过拼接了类型转换的MethodHandle调用固定参数个数的处理函数
+     * @param args 已经通过{@code #accepts(String[])}检查的参数
+     * @throws InvocationTargetException 处理函数内部抛出的异常会被包装成此异常
+     */
+    void invokeParsed(String[] args) throws InvocationTargetException {
+        Lock lock = this.lock;
+        if (lock != null) lock.lock();
+        try {
+            parsedHandle.invokeExact(args);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        } finally {
+            if (lock != null) lock.unlock();
+        }
+    }
+
+    /**
+     * 调用无参的处理函数(包括将OnlyCare标在函数上的处理函数)
+     * @throws InvocationTargetException 处理函数内部抛出的异常会被包装成此异常
+     */
+    void invoke() throws InvocationTargetException {
+        invoke(NO_ARGS);
+    }
+
+    /**
+     * 通过绑定时生成的MethodHandle调用处理函数
+     * @param args 参数，个数与类型必须与处理函数的声明一致
+     * @throws InvocationTargetException 处理函数内部抛出的异常会被包装成此异常
+     */
+    void invoke(Object[] args) throws InvocationTargetException {
+        Lock lock = this.lock;
+        if (lock != null) lock.lock();
+        try {
+            handle.invokeExact(args);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        } finally {
+            if (lock != null) lock.unlock();
+        }
+    }
+
+    /**
+     * @return invoker的锁，不是Serialized的处理函数返回null
+     */
+    Lock lock() {
+        return lock;
+    }
+
     public Method getMethod() {
         return method;
     }
@@ -228,4 +389,30 @@ public class HandlingMethod {
         //将多个参数合并为一个参数来处理
         TYPE_SINGLE_PARAM;
     }
+
+    /**
+     * 通过{@code Analysable#processAsync(String)}异步处理命令时，处理函数在哪里被调用
+     */
+    enum Execution {
+        //没有标注，使用解析器的默认执行器
+        DEFAULT,
+        //标有Blocking，使用阻塞任务的执行器
+        BLOCKING,
+        //标有CpuBound，使用计算任务的执行器
+        CPU_BOUND,
+        //标有OnCallerThread，在提交命令的线程中调用
+        CALLER;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        static final Class<? extends Annotation>[] ANNOTATIONS = new Class[]{
+                Blocking.class, CpuBound.class, OnCallerThread.class
+        };
+
+        static Execution of(Method method) {
+            if (method.isAnnotationPresent(Blocking.class)) return BLOCKING;
+            if (method.isAnnotationPresent(CpuBound.class)) return CPU_BOUND;
+            if (method.isAnnotationPresent(OnCallerThread.class)) return CALLER;
+            return DEFAULT;
+        }
+    }
 }
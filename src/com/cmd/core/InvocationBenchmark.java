@@ -0,0 +1,76 @@
+package com.cmd.core;
+
+import java.lang.reflect.Method;
+
+import com.cmd.annotations.CommandName;
+
+/**
+ * 比较调用同一个处理函数{@code add(int, int)}的几种方式每次调用的耗时
+ * <ul>
+ * <li>reflect：参数已经是装箱好的Object数组，通过{@code Method#invoke}反射调用
+ * <li>handle：同样的Object数组，通过HandlingMethod绑定时生成的MethodHandle调用
+ * <li>reflect+parse：先把字符串参数转换成装箱的Integer再反射调用，即原来每条命令的调用方式
+ * <li>handle+parse：通过拼接了类型转换的MethodHandle直接用字符串参数调用
+ * <li>process：从分析到调用的完整流程
+ * </ul>
+ * 每种方式先预热再计时，输出每次调用的纳秒数
+ * <pre>
+ * java com.cmd.core.InvocationBenchmark [每轮调用次数] [轮数]
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class InvocationBenchmark {
+
+    private long total;
+
+    @CommandName
+    public void add(int a, int b) {
+        total += a + b;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        InvocationBenchmark bench = new InvocationBenchmark();
+        Method method = InvocationBenchmark.class.getMethod("add", int.class, int.class);
+        HandlingMethod handlingMethod = new HandlingMethod(method);
+        handlingMethod.bind(bench, null);
+        FastAnalyzer analyzer = FastAnalyzer.handleWith(bench);
+
+        Object[] boxed = {1, 2};
+        String[] strings = {"1", "2"};
+        Call[] calls0 = {
+                () -> method.invoke(bench, boxed),
+                () -> handlingMethod.invoke(boxed),
+                () -> method.invoke(bench, Integer.valueOf(strings[0]), Integer.valueOf(strings[1])),
+                () -> handlingMethod.invokeParsed(strings),
+                () -> analyzer.process("add 1 2"),
+        };
+        String[] names = {"reflect", "handle", "reflect+parse", "handle+parse", "process"};
+        //预热
+        for (Call call : calls0) run(call, calls);
+        for (int round = 0; round < rounds; round++) {
+            StringBuilder line = new StringBuilder("round " + round + ":");
+            for (int i = 0; i < calls0.length; i++) {
+                long nanos = run(calls0[i], calls);
+                line.append(String.format("  %s %.1f ns/op", names[i], (double) nanos / calls));
+            }
+            System.out.println(line);
+        }
+        long expected = 3L * calls * calls0.length * (rounds + 1);
+        if (bench.total != expected) {
+            throw new IllegalStateException("expected total " + expected + " but was " + bench.total);
+        }
+    }
+
+    private static long run(Call call, int calls) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) call.call();
+        return System.nanoTime() - start;
+    }
+
+    private interface Call {
+        void call() throws Exception;
+    }
+}
@@ -6,8 +6,11 @@ import java.util.function.Consumer;
 /**
  * DFA算法？实现命令的匹配与查找，此类为多级搜索树中的一个节点，
  * 节点内保存有下一层的节点数组，搜索使用二分查找，添加时插入添加自动保持数组有序
+ * <p>
+ * FastAnalyzer不再直接使用Node组成的树查找命令，而是用它作为构建双数组字典树时的临时结构
+ * @see DoubleArrayTrie
  *
- * @version 2.4
+ * @version 2.5
  * Created by congxiaoyao on 2016/2/25.
  */
 public class Node implements Comparable<Node> {
@@ -20,6 +23,7 @@ public class Node implements Comparable<Node> {
     public int realLayerLen = 0;    //nextLayer的长度
 
     public Command[] commands;      //当这个数组不为null时或许到达了查找重点
+    DoubleArrayTrie.Route[] routes; //子命令路由，不为null时或许到达了某个子命令
 
     public Node(char c) {
         this.c = c;
@@ -57,6 +61,19 @@ public class Node implements Comparable<Node> {
         return node;
     }
 
+    /**
+     * 添加一个子命令路由
+     * @param route
+     */
+    void addRoute(DoubleArrayTrie.Route route) {
+        if (routes == null) {
+            routes = new DoubleArrayTrie.Route[]{route};
+            return;
+        }
+        routes = Arrays.copyOf(routes, routes.length + 1);
+        routes[routes.length - 1] = route;
+    }
+
     /**
      * 添加一个command对象
      * @param command
@@ -102,6 +119,7 @@ public class Node implements Comparable<Node> {
      * @return 去nextLayer中寻找参数节点，没有返回null
      */
     public Node findNodeInNextLayer(Node node) {
+        if (nextLayer == null) return null;
         int index = Arrays.binarySearch(nextLayer, 0, realLayerLen, node);
         return index >= 0 ? nextLayer[index] : null;
     }
@@ -4,16 +4,26 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Toolkit;
 import java.awt.event.KeyEvent;
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.PrintStream;
-import java.io.StringReader;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JFrame;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.text.BadLocationException;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.Caret;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
 
 import com.cmd.extras.CodeAssistant.WeightedString;
 import com.cmd.utils.RoundList;
@@ -24,9 +34,18 @@ import com.cmd.utils.SelectableArray;
  * 调用无参的构造函数实例化后，使用{@code CommandWindow#setVisible()}方法显示 关闭窗口情调用{@code closeWindow}方法
  * 用户输入的每一行合法内容都会以回调接口的形式通知外界
  * {@code OnSubmitListener#onSubmit(String)}
+ * 异步处理提交的命令时，在onSubmit中调用{@code #deferHint()}，新的提示符会等命令处理完、输出显示完再出现
  * 支持代码提示功能，默认不开启，如需启用请构造{@code CodeAssistant}实例并传入
  * {@code #setAssistant(CodeAssistant)}
  * 按住ctrl+上下箭头可查看之前输入过的内容
+ * 任何线程的输出都先放入一个无锁的队列，由EDT大约每帧({@code #OUTPUT_INTERVAL}毫秒)取出一次，
+ * 合并成一次对Document的修改，所以大量的输出不会造成大量的修改与重绘，不同线程的输出按放入队列的顺序显示
+ * 缓慢输出({@code #printlnSmoothly(String)})的内容也放在同一个队列中，由同一个定时器每帧输出几行，
+ * 它输出完之前排在后面的输出都要等待，可以通过{@code #flushOutput()}立即全部显示
+ * 窗口中的内容保存在{@code ScrollbackDocument}中，超出{@code #setScrollbackLimit(int, int)}设置的上限时删除最旧的内容
+ * 积压的输出超过{@code #SPILL_THRESHOLD}个字符时(如一次输出几百兆的报告)，之后的输出不再放入窗口，而是写入临时文件，
+ * 直到积压的输出都写完，按ctrl+O或调用{@code #showSpilledOutput()}可以在{@code SpillView}中查看及查找写入临时文件的全部输出
+ * 积压的输出超过{@code #MAX_PENDING_CHARS}个字符时，EDT之外的输出线程会等待EDT写完一部分，所以不论输出多少，堆的占用都有上限
  * 其他小功能请看类内共有方法的方法注释
  *
  * @see OnSubmitListener#onSubmit(String)
@@ -47,7 +66,24 @@ public class CommandWindow extends JFrame{
 	public static final KeyStroke CUT = KeyStroke.getKeyStroke(KeyEvent.VK_X,KeyEvent.CTRL_MASK);
 	public static final KeyStroke ARROW_UP = KeyStroke.getKeyStroke(KeyEvent.VK_UP,KeyEvent.CTRL_MASK);
 	public static final KeyStroke ARROW_DOWN = KeyStroke.getKeyStroke(KeyEvent.VK_DOWN,KeyEvent.CTRL_MASK);
+	public static final KeyStroke OPEN_OUTPUT = KeyStroke.getKeyStroke(KeyEvent.VK_O,KeyEvent.CTRL_MASK);
 	
+	//EDT取出输出的间隔(毫秒)
+	public static final int OUTPUT_INTERVAL = 16;
+	//EDT一次最多取出的字符数，剩下的留到下一帧，以免一次修改太多卡住界面
+	public static final int OUTPUT_BATCH_LIMIT = 1 << 20;
+	//最多有多少段等待缓慢输出的内容，超出的直接输出
+	public static final int MAX_PENDING_SMOOTH = 16;
+	//默认最多保留的行数及字符数
+	public static final int DEFAULT_SCROLLBACK_LINES = 10000;
+	public static final int DEFAULT_SCROLLBACK_CHARS = 1 << 20;
+	//积压的输出超过这么多字符时开始写入临时文件
+	public static final int SPILL_THRESHOLD = 4 << 20;
+	//写入临时文件时EDT一次最多写入的字符数
+	public static final int SPILL_BATCH_LIMIT = 1 << 20;
+	//积压的输出超过这么多字符时EDT之外的输出线程要等待
+	public static final int MAX_PENDING_CHARS = 4 * SPILL_THRESHOLD;
+
 	public String HINT = "请输入>";
 	public String LFHINT = "\n请输入>";
 	public int    LEN_HINT = HINT.length();
@@ -57,6 +93,35 @@ public class CommandWindow extends JFrame{
 	private Font font = new Font("黑体", Font.BOLD, 15);
 
 	private PrintStream printStream;
+
+	//等待显示的输出，String或SmoothJob，任何线程都可以放入，只由EDT取出
+	private final Queue<Object> pendingOutput = new ConcurrentLinkedQueue<>();
+	//已经安排了EDT取出输出时为true
+	private final AtomicBoolean drainScheduled = new AtomicBoolean();
+	private final Timer outputTimer = new Timer(OUTPUT_INTERVAL, e -> drainOutput(this.smoothLinesPerTick, OUTPUT_BATCH_LIMIT));
+	//队列中的SmoothJob的个数
+	private final AtomicInteger pendingSmooth = new AtomicInteger();
+	//缓慢输出时每帧输出的行数
+	private volatile int smoothLinesPerTick = 3;
+	//正在缓慢输出的内容，只在EDT中访问
+	private SmoothJob smoothing;
+	//提交命令后它的输出一批没有显示完或命令还在异步处理，提示符要等它们都完成再补上，只在EDT中访问
+	private boolean hintPending;
+	//通过deferHint声明了还没处理完的命令数，只在EDT中访问
+	private int runningCommands;
+	//最后一行，即提示符及用户输入所在的行
+	private final InputLine inputLine = new InputLine();
+	//队列中的输出的字符数
+	private final AtomicLong pendingChars = new AtomicLong();
+	//以下只在EDT中访问，spillFile在第一次需要时创建
+	private SpillFile spillFile;
+	private boolean spilling;
+	//无法创建临时文件时不再尝试
+	private boolean spillUnavailable;
+	//这一次开始写入临时文件时的行号
+	private long spillStartLine;
+	private SpillView spillView;
+	private JFrame spillFrame;
 	
 	private RoundList<String> inputs = new RoundList<>(10);
 	private int inputsPointer = 0;
@@ -68,12 +133,17 @@ public class CommandWindow extends JFrame{
 	public CommandWindow(int width , int height) {
 		super("请输入命令");
 
+		//上一次的事件还没处理完时不能被合并掉，否则drainScheduled会一直为true
+		outputTimer.setRepeats(false);
+		outputTimer.setCoalesce(false);
 		initPrintStream();
 
 		textArea = new CMDTextArea(HINT);
 		textArea.setFont(font);
 		textArea.enableInputMethods(false);
 		textArea.setLineWrap(true);
+		textArea.getDocument().addDocumentListener(inputLine);
+		inputLine.reset();
 		moveCaretToBottom();
 		scrollPane = new JScrollPane(textArea);
 		add(scrollPane);
@@ -113,8 +183,7 @@ public class CommandWindow extends JFrame{
 			}
 			@Override
 			public void print(String s) {
-				textArea.append(s);
-				moveCaretToBottom();
+				output(String.valueOf(s));
 			}
 			@Override
 			public void print(Object object) {
@@ -124,6 +193,247 @@ public class CommandWindow extends JFrame{
 		System.setOut(printStream);
 	}
 	
+	/**
+	 * 把text放入输出队列，还没有安排EDT取出时安排在下一帧取出
+	 * @param text 要显示的内容
+	 */
+	private void output(Object text) {
+		pendingChars.addAndGet(lengthOf(text));
+		pendingOutput.offer(text);
+		if (drainScheduled.compareAndSet(false, true)) outputTimer.start();
+		if (pendingChars.get() > MAX_PENDING_CHARS && !SwingUtilities.isEventDispatchThread()) awaitDrain();
+	}
+
+	/**
+	 * 等待EDT把积压的输出减少到{@code #MAX_PENDING_CHARS}以下，EDT自己输出时不能等待
+	 */
+	private void awaitDrain() {
+		synchronized (pendingChars) {
+			while (pendingChars.get() > MAX_PENDING_CHARS) {
+				try {
+					pendingChars.wait(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 唤醒等待积压的输出减少的线程
+	 */
+	private void releaseProducers() {
+		if (pendingChars.get() > MAX_PENDING_CHARS) return;
+		synchronized (pendingChars) {
+			pendingChars.notifyAll();
+		}
+	}
+
+	/**
+	 * 在EDT中取出队列中的输出，合并后一次追加到textArea中
+	 * 遇到缓慢输出的内容时最多输出smoothLines行，它输出完之前后面的内容都留在队列中
+	 * @param smoothLines 这一次最多输出多少行缓慢输出的内容
+	 * @param limit 这一次最多追加多少个字符，超出的留到下一帧
+	 */
+	private void drainOutput(int smoothLines, int limit) {
+		drainScheduled.set(false);
+		if (spilling || (!spillUnavailable && pendingChars.get() > SPILL_THRESHOLD)) {
+			//只有flushOutput才一次全部写入，按键时也只写入一批
+			spillOutput(smoothLines == Integer.MAX_VALUE ? Integer.MAX_VALUE : SPILL_BATCH_LIMIT);
+			return;
+		}
+		StringBuilder builder = new StringBuilder();
+		while (builder.length() < limit) {
+			if (smoothing != null) {
+				smoothLines -= smoothing.render(builder, smoothLines);
+				if (!smoothing.isDone()) break;
+				if (smoothing.restoreHint) builder.append(HINT);
+				smoothing = null;
+			}
+			Object next = pendingOutput.poll();
+			if (next == null) break;
+			pendingChars.addAndGet(-lengthOf(next));
+			if (next instanceof SmoothJob) {
+				pendingSmooth.decrementAndGet();
+				smoothing = (SmoothJob) next;
+				smoothing.restoreHint = removeTrailingHint(builder);
+			} else {
+				builder.append((String) next);
+			}
+		}
+		if (builder.length() > 0) {
+			textArea.append(builder.toString());
+			moveCaretToBottom();
+		}
+		releaseProducers();
+		restorePendingHint();
+		if ((smoothing != null || !pendingOutput.isEmpty()) && drainScheduled.compareAndSet(false, true)) {
+			outputTimer.start();
+		}
+	}
+
+	/**
+	 * @return 还有没显示完的输出时返回true
+	 */
+	private boolean isOutputPending() {
+		return smoothing != null || spilling || !pendingOutput.isEmpty();
+	}
+
+	/**
+	 * 在最后一行补上提示符，最后一行已经是提示符时什么也不做
+	 */
+	private void appendHint() {
+		if (inputLine.length() == 0) {
+			textArea.append(HINT);
+		}else if(!inputLine.isHint()){
+			textArea.append(LFHINT);
+		}
+		moveCaretToBottom();
+	}
+
+	/**
+	 * 提交的命令都处理完并且输出全部显示完之后补上等待中的提示符
+	 */
+	private void restorePendingHint() {
+		if (hintPending && runningCommands == 0 && !isOutputPending()) {
+			hintPending = false;
+			appendHint();
+		}
+	}
+
+	private static int lengthOf(Object text) {
+		return text instanceof SmoothJob ? ((SmoothJob) text).text.length() : ((String) text).length();
+	}
+
+	/**
+	 * 在EDT中把队列中的输出写入临时文件，缓慢输出的内容也一次全部写入
+	 * 队列空了之后结束写入，在窗口中显示写入了多少行，之后的输出照常显示在窗口中
+	 * @param limit 这一次最多写入多少个字符，超出的留到下一帧
+	 */
+	private void spillOutput(int limit) {
+		if (!spilling) {
+			try {
+				if (spillFile == null) spillFile = new SpillFile();
+			} catch (IOException e) {
+				//无法创建临时文件时只能照常显示，积压的输出仍然会被ScrollbackDocument截断
+				e.printStackTrace();
+				spillUnavailable = true;
+				drainOutput(smoothLinesPerTick, OUTPUT_BATCH_LIMIT);
+				return;
+			}
+			spilling = true;
+			spillStartLine = spillFile.lineCount();
+			textArea.append("\n[输出过多，正在写入临时文件，按ctrl+O查看]\n");
+			moveCaretToBottom();
+		}
+		StringBuilder builder = new StringBuilder();
+		if (smoothing != null) {
+			smoothing.render(builder, Integer.MAX_VALUE);
+			smoothing = null;
+		}
+		Object next;
+		while (builder.length() < limit && (next = pendingOutput.poll()) != null) {
+			pendingChars.addAndGet(-lengthOf(next));
+			if (next instanceof SmoothJob) {
+				pendingSmooth.decrementAndGet();
+				((SmoothJob) next).render(builder, Integer.MAX_VALUE);
+			} else {
+				builder.append((String) next);
+			}
+		}
+		boolean finished = pendingOutput.isEmpty();
+		//输出末尾的提示符留在窗口中
+		boolean hint = finished && builder.length() >= HINT.length()
+				&& builder.lastIndexOf(HINT) == builder.length() - HINT.length();
+		if (hint) builder.setLength(builder.length() - HINT.length());
+		try {
+			spillFile.append(builder);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		releaseProducers();
+		if (spillView != null) spillView.refresh();
+		if (finished) {
+			spilling = false;
+			textArea.append("[" + (spillFile.lineCount() - spillStartLine) + "行输出已写入"
+					+ spillFile.getPath() + "]\n" + (hint ? HINT : ""));
+			moveCaretToBottom();
+			restorePendingHint();
+		} else if (drainScheduled.compareAndSet(false, true)) {
+			//不等下一帧，排在已经到达的事件之后立即继续写入，界面依然可以响应
+			SwingUtilities.invokeLater(() -> drainOutput(smoothLinesPerTick, OUTPUT_BATCH_LIMIT));
+		}
+	}
+
+	/**
+	 * 在一个新窗口中显示写入临时文件的全部输出，并滚动到最近一次写入的开头，不在EDT中调用时会在EDT中执行
+	 */
+	public void showSpilledOutput() {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(this::showSpilledOutput);
+			return;
+		}
+		if (spillFile == null) {
+			System.out.println("没有写入临时文件的输出");
+			return;
+		}
+		if (spillFrame == null) {
+			spillView = new SpillView(spillFile, font);
+			spillFrame = new JFrame(spillFile.getPath().toString());
+			spillFrame.add(new JScrollPane(spillView));
+			spillFrame.setSize(getWidth(), getHeight());
+			spillFrame.setLocationRelativeTo(this);
+			spillFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+		}
+		spillFrame.setVisible(true);
+		spillFrame.toFront();
+		spillView.refresh();
+		spillView.scrollToLine(spillStartLine);
+	}
+
+	/**
+	 * 去掉即将显示的内容末尾的提示符，builder为空时去掉textArea末尾的提示符
+	 * @return 去掉了提示符返回true
+	 */
+	private boolean removeTrailingHint(StringBuilder builder) {
+		int length = HINT.length();
+		if (builder.length() > 0) {
+			if (builder.length() < length || builder.lastIndexOf(HINT) != builder.length() - length) return false;
+			builder.setLength(builder.length() - length);
+			return true;
+		}
+		try {
+			int offset = getTextLength() - length;
+			if (offset < 0 || !textArea.getDocument().getText(offset, length).equals(HINT)) return false;
+			textArea.getDocument().remove(offset, length);
+			return true;
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	/**
+	 * 立即显示所有等待中的输出，包括还没有缓慢输出完的内容，可以在任何线程中调用
+	 */
+	public void flushOutput() {
+		if (SwingUtilities.isEventDispatchThread()) {
+			drainOutput(Integer.MAX_VALUE, Integer.MAX_VALUE);
+		} else {
+			SwingUtilities.invokeLater(this::flushOutput);
+		}
+	}
+
+	/**
+	 * 设置缓慢输出的速度
+	 * @param linesPerTick 每帧({@code #OUTPUT_INTERVAL}毫秒)输出的行数
+	 */
+	public void setSmoothLinesPerTick(int linesPerTick) {
+		if (linesPerTick <= 0) throw new IllegalArgumentException("linesPerTick <= 0");
+		this.smoothLinesPerTick = linesPerTick;
+	}
+
 	/**
 	 * @return 光标位置
 	 */
@@ -132,14 +442,7 @@ public class CommandWindow extends JFrame{
 	}
 	
 	private int getHintPosition() {
-		int position = 0;
-		try {
-			position = textArea.getLineStartOffset(textArea.getLineCount()-1);
-			position += HINT.length();
-		} catch (BadLocationException e) {
-			e.printStackTrace();
-		}
-		return position;
+		return inputLine.hintPosition();
 	}
 	
 	/**
@@ -189,28 +492,11 @@ public class CommandWindow extends JFrame{
 		return getCaretPosition() - getHintPosition();
 	}
 	
-	/**
-	 * @return textArea中最后一行的内容
-	 */
-	private String getLastLine() {
-		try {
-			int offset = textArea.getLineStartOffset(textArea.getLineCount()-1);
-			return textArea.getDocument().getText(offset, getTextLength() - offset);
-		} catch (BadLocationException e) {
-			e.printStackTrace();
-		}
-		return null;
-	}
-	
 	/**
 	 * @return 用户在最后一行的输入
 	 */
-	private String getLastInput(String lastLine) {
-		if(lastLine == null) {
-			lastLine = getLastLine();
-		}
-		if(lastLine.length() == 0) return "";
-		return lastLine.substring(LEN_HINT, lastLine.length());
+	private String getLastInput() {
+		return inputLine.input();
 	}
 	
 	/**
@@ -219,15 +505,28 @@ public class CommandWindow extends JFrame{
 	 */
 	private void replaceInputing(String content) {
 		try {
-			int offset = textArea.getLineStartOffset(textArea.getLineCount()-1);
+			int offset = inputLine.start();
 			textArea.getDocument().remove(offset, getTextLength() - offset);
-			textArea.append(HINT);
-			textArea.append(content);
+			textArea.append(HINT + content);
 		} catch (BadLocationException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * 设置窗口中最多保留的内容，超出时删除最旧的内容，不在EDT中调用时会在EDT中执行
+	 * @param maxLines 最多保留的行数，0为不限制
+	 * @param maxChars 最多保留的字符数，0为不限制
+	 */
+	public void setScrollbackLimit(int maxLines, int maxChars) {
+		if (maxLines < 0 || maxChars < 0) throw new IllegalArgumentException("negative limit");
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(() -> setScrollbackLimit(maxLines, maxChars));
+			return;
+		}
+		((ScrollbackDocument) textArea.getDocument()).setLimit(maxLines, maxChars);
+	}
+
 	/**
 	 * 设置控制台高度
 	 * @param height 高度的像素值
@@ -241,13 +540,33 @@ public class CommandWindow extends JFrame{
 	 */
 	public void closeWindow() {
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		if (spillFrame != null) spillFrame.dispose();
+		if (spillFile != null) {
+			try {
+				spillFile.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 		dispose();
 	}
 	
 	/**
-	 * 清除窗口中的内容
+	 * 清除窗口中的内容，包括还没有显示的输出，不在EDT中调用时会在EDT中执行
 	 */
 	public void clearCommandWindow() {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(this::clearCommandWindow);
+			return;
+		}
+		Object next;
+		while ((next = pendingOutput.poll()) != null) {
+			pendingChars.addAndGet(-lengthOf(next));
+			if (next instanceof SmoothJob) pendingSmooth.decrementAndGet();
+		}
+		smoothing = null;
+		spilling = false;
+		hintPending = false;
 		textArea.setText("");
 	}
 	
@@ -309,53 +628,26 @@ public class CommandWindow extends JFrame{
 			printlnSmoothly(string.substring(1, len));
 		}
 		else if(len != 0 && string.charAt(len-1) == '\4') {
-            synchronized (textArea) {
-                textArea.append(string.substring(0, len-1));
-                textArea.append(LFHINT);
-            }
+			output(string.substring(0, len-1) + LFHINT);
 		}else {
-            synchronized (textArea) {
-                textArea.append(string);
-                textArea.append("\n");
-            }
+			output(string + "\n");
 		}
-		moveCaretToBottom();
 	}
 	
 	/**
-	 * 在窗口中输出string的值,但不是一下子蹦出来，是缓慢的出来的，牵扯到多线程问题，请慎用
-	 * 请尽量在处理函数中使用此函数，否则可能造成数据显示不完整
+	 * 在窗口中输出string的值,但不是一下子蹦出来，是每帧输出几行缓慢的出来的
+	 * 输出前会去掉末尾的提示符，输出完再加回来，输出完之前在它之后的输出都要等待
+	 * 等待缓慢输出的内容超过{@code #MAX_PENDING_SMOOTH}段时直接输出
 	 * @param string
 	 */
-	private boolean can = true;
 	public void printlnSmoothly(String string) {
 		if(string == null) return;
-		new Thread(()->{
-            try {
-                synchronized (textArea) {
-                    textArea.getDocument().remove(getTextLength()-HINT.length(), HINT.length());
-                }
-            } catch (BadLocationException e1) {
-                e1.printStackTrace();
-            }
-            BufferedReader reader = new BufferedReader(new StringReader(string));
-            String line = null;
-            try {
-                can =false;
-                while((line = reader.readLine()) != null) {
-                    System.out.println(line);
-                    Thread.sleep(5);
-                }
-                can = true;
-                reader.close();
-                synchronized (textArea) {
-                    textArea.append(HINT);
-                }
-                moveCaretToBottom();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-		}).start();
+		if (pendingSmooth.incrementAndGet() > MAX_PENDING_SMOOTH) {
+			pendingSmooth.decrementAndGet();
+			output(string.endsWith("\n") ? string : string + "\n");
+			return;
+		}
+		output(new SmoothJob(string));
 	}
 	
 	public JTextArea getTextArea() {
@@ -377,13 +669,40 @@ public class CommandWindow extends JFrame{
 	public void setOnSubmitListener(OnSubmitListener onSubmitListener) {
 		this.onSubmitListener = onSubmitListener;
 	}
+
+	/**
+	 * 在{@code OnSubmitListener#onSubmit(String)}中异步处理命令时调用，提示符会等到返回的Runnable被调用之后，
+	 * 并且在那之前的输出都显示完了再补上，这样命令的输出不会出现在新的提示符之后
+	 * 返回的Runnable可以在任何线程中调用，多次调用只算一次，一般在processAsync返回的CompletableFuture的whenComplete中调用
+	 * <pre>
+	 * Runnable done = window.deferHint();
+	 * analyzer.processAsync(content).whenComplete((result, e) -&gt; done.run());
+	 * </pre>
+	 * 只能在EDT中调用
+	 * @return 命令处理完成时调用的Runnable
+	 */
+	public Runnable deferHint() {
+		runningCommands++;
+		AtomicBoolean completed = new AtomicBoolean();
+		return () -> {
+			if (completed.compareAndSet(false, true)) SwingUtilities.invokeLater(this::commandCompleted);
+		};
+	}
+
+	/**
+	 * 一条通过{@code #deferHint()}声明的命令处理完了，在EDT中调用
+	 */
+	private void commandCompleted() {
+		runningCommands--;
+		restorePendingHint();
+	}
 	
 	private class CMDTextArea extends JTextArea {
 
 		private static final long serialVersionUID = 1L;
 
 		public CMDTextArea(String HINT) {
-			super(HINT);
+			super(new ScrollbackDocument(DEFAULT_SCROLLBACK_LINES, DEFAULT_SCROLLBACK_CHARS), HINT, 0, 0);
 		}
 
 		/**
@@ -394,13 +713,21 @@ public class CommandWindow extends JFrame{
 		@Override
 		protected boolean processKeyBinding(KeyStroke ks, KeyEvent e, int condition, boolean pressed) {
 			if(condition != 0) return false;
-			//先检查最后一行的提示符是否存在
-			String lastLine = getLastLine();
-			if(lastLine.length() < HINT.length() && can) {
+			//要读取或替换用户输入时先显示一批还在队列中的输出，尽量保证看到的最后一行是最新的
+			//其他按键不需要，留给下一帧显示，不在按键时一次追加大量内容
+			if(ks.equals(ENTER) || ks.equals(ARROW_UP) || ks.equals(ARROW_DOWN)) {
+				drainOutput(0, OUTPUT_BATCH_LIMIT);
+			}
+			//先检查最后一行的提示符是否存在，提示符正等着补上时不需要
+			if(inputLine.length() < HINT.length() && smoothing == null && !hintPending) {
 				textArea.append(HINT);
 				moveCaretToBottom();
 				if(ks.equals(ENTER)) return false;
-				return processKeyBinding(ks, e, condition, pressed);
+			}
+			//拦截ctrl+O
+			if(ks.equals(OPEN_OUTPUT)) {
+				showSpilledOutput();
+				return true;
 			}
 			//拦截ctrl+上箭头、下箭头
 			if(ks.equals(ARROW_UP)) {
@@ -425,20 +752,21 @@ public class CommandWindow extends JFrame{
 				}
 				if(!isCaretAtBottom()) {
 					moveCaretToBottom();
-					return processKeyBinding(ks, e, condition, pressed);
 				}
 				//提取用户输入
-				String content = getLastInput(lastLine);
+				String content = getLastInput();
 				if(!content.equals("") && onSubmitListener != null){
 					textArea.append("\n");
 					inputs.add(content);
 					inputsPointer = inputs.size();
 					onSubmitListener.onSubmit(content);
-					lastLine = getLastLine();
-					if (lastLine.isEmpty()) {
-						textArea.append(HINT);
-					}else if(!lastLine.equals(HINT)){
-						textArea.append(LFHINT);
+					//在EDT中同步处理的命令的输出要出现在提示符之前，一批显示不完时等剩下的输出显示完再补上提示符
+					//异步处理的命令(见deferHint)等它处理完再补上
+					drainOutput(0, OUTPUT_BATCH_LIMIT);
+					if (runningCommands > 0 || isOutputPending()) {
+						hintPending = true;
+					}else {
+						appendHint();
 					}
 				}else {
 					textArea.append(LFHINT);
@@ -503,7 +831,7 @@ public class CommandWindow extends JFrame{
 			}
 			if(ks.getKeyEventType() == 402 &&e.getKeyChar() > 31 && e.getKeyChar() < 127) {
 				int start = getCaretPosition();
-				String lastInput = getLastInput(null);
+				String lastInput = getLastInput();
 				SelectableArray<WeightedString> find = assistant.find(lastInput);
 				int select = -1, min = Integer.MAX_VALUE;
 				for (int i = 0; i < find.size(); i++) {
@@ -527,6 +855,147 @@ public class CommandWindow extends JFrame{
 		}
 	}
 
+	/**
+	 * textArea最后一行的开始位置及内容，通过监听Document的修改增量维护，
+	 * 处理按键时不需要再从Document中查找最后一行或取出其中的文字，每次按键的开销与窗口中的内容多少无关
+	 * 只有删除了最后一行之前的换行符(如清屏)时才从Document中重新读取最后一行
+	 * 只在EDT中修改Document，所以也只在EDT中访问
+	 */
+	private final class InputLine implements DocumentListener {
+
+		private final StringBuilder text = new StringBuilder();
+		private int start;
+
+		/**
+		 * 从Document中重新读取最后一行
+		 */
+		void reset() {
+			Document document = textArea.getDocument();
+			Element root = document.getDefaultRootElement();
+			start = root.getElement(root.getElementCount() - 1).getStartOffset();
+			text.setLength(0);
+			try {
+				text.append(document.getText(start, document.getLength() - start));
+			} catch (BadLocationException e) {
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * @return 最后一行的开始位置
+		 */
+		int start() {
+			return start;
+		}
+
+		/**
+		 * @return 最后一行的长度
+		 */
+		int length() {
+			return text.length();
+		}
+
+		/**
+		 * @return 提示符之后的位置，即用户输入开始的位置
+		 */
+		int hintPosition() {
+			return start + LEN_HINT;
+		}
+
+		/**
+		 * @return 最后一行只有提示符时返回true
+		 */
+		boolean isHint() {
+			return text.length() == HINT.length() && text.indexOf(HINT) == 0;
+		}
+
+		/**
+		 * @return 提示符之后的内容
+		 */
+		String input() {
+			return text.length() <= LEN_HINT ? "" : text.substring(LEN_HINT);
+		}
+
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			int offset = e.getOffset();
+			int length = e.getLength();
+			if (offset < start) {
+				start += length;
+				return;
+			}
+			String inserted;
+			try {
+				inserted = e.getDocument().getText(offset, length);
+			} catch (BadLocationException ex) {
+				reset();
+				return;
+			}
+			int newline = inserted.lastIndexOf('\n');
+			if (newline == -1) {
+				text.insert(offset - start, inserted);
+				return;
+			}
+			//新的最后一行是插入的内容的最后一行加上原来最后一行中插入位置之后的部分
+			text.delete(0, offset - start).insert(0, inserted, newline + 1, length);
+			start = offset + newline + 1;
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			int offset = e.getOffset();
+			int end = offset + e.getLength();
+			if (offset >= start) {
+				text.delete(offset - start, end - start);
+			} else if (end < start) {
+				start -= e.getLength();
+			} else {
+				//最后一行之前的换行符被删掉了
+				reset();
+			}
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+		}
+	}
+
+	/**
+	 * 一段等待缓慢输出的内容，记录着已经输出到的位置
+	 */
+	private static final class SmoothJob {
+
+		private final String text;
+		private int position;
+		//开始输出时去掉了末尾的提示符，输出完要加回来
+		boolean restoreHint;
+
+		SmoothJob(String text) {
+			this.text = text;
+		}
+
+		/**
+		 * 输出最多lines行，每行以\n结尾
+		 * @return 实际输出的行数
+		 */
+		int render(StringBuilder builder, int lines) {
+			int count = 0;
+			while (count < lines && position < text.length()) {
+				int end = text.indexOf('\n', position);
+				if (end == -1) end = text.length();
+				int lineEnd = end > position && text.charAt(end - 1) == '\r' ? end - 1 : end;
+				builder.append(text, position, lineEnd).append('\n');
+				position = end + 1;
+				count++;
+			}
+			return count;
+		}
+
+		boolean isDone() {
+			return position >= text.length();
+		}
+	}
+
 	/**
 	 * 用户输入的内容会通过此接口回调，将每一次用户的一行输入作为函数的参数通知外界
 	 * @author congxiaoyao
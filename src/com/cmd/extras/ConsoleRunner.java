@@ -0,0 +1,218 @@
+package com.cmd.extras;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.cmd.core.CommandAnalyzer;
+import com.cmd.core.FastAnalyzer;
+import com.cmd.handler.DynamicCommandHandler;
+import com.cmd.handler.HelpHandler;
+
+/**
+ * 不依赖Swing的命令行交互入口，从标准输入逐行读取命令交给解析器处理，处理函数的输出写入标准输出
+ * 不会加载任何AWT/Swing的类，可以在没有图形界面的服务器上运行
+ * <p>
+ * 输入以{@code #BUFFER_SIZE}字节为单位读取，直接在读到的字节上寻找行的边界，
+ * 只含有ASCII字符的行不会被复制成String，含有非ASCII字符的行按UTF-8解码，行尾的\r会被忽略，空行会被跳过
+ * <p>
+ * 运行期间System.out被替换成一个不自动刷新的带缓冲的PrintStream，处理函数的println不会每次都写一次标准输出，
+ * 只在已经读到的输入全部处理完、下一次读取可能阻塞时才刷新，
+ * 所以交互使用时每条命令的输出会立即显示，而通过管道输入大量命令时输出是成块写出的
+ * 没有处理成功的行以{@code unhandled: 内容}的形式写入标准错误，同样带缓冲并与标准输出一起刷新
+ * <pre>
+ * java com.cmd.extras.ConsoleRunner &lt; commands.txt &gt; output.txt
+ * </pre>
+ * 处理函数中可以调用{@code #stop()}在当前行处理完之后结束运行
+ *
+ * @version 1.0
+ */
+public class ConsoleRunner {
+
+    //读取输入及缓冲输出的字节数
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CommandAnalyzer analyzer;
+    private volatile String prompt;
+    private volatile boolean stopped;
+
+    /**
+     * @param analyzer 处理命令的解析器，推荐使用FastAnalyzer
+     */
+    public ConsoleRunner(CommandAnalyzer analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    public static void main(String[] args) throws IOException {
+        FastAnalyzer analyzer = FastAnalyzer.getInstance();
+        analyzer.addHandlingObject(new DynamicCommandHandler(analyzer));
+        analyzer.addHandlingObject(new HelpHandler(analyzer));
+        ConsoleRunner runner = new ConsoleRunner(analyzer);
+        //只有在终端中交互使用时才显示提示符
+        if (System.console() != null) runner.setPrompt("> ");
+        runner.run(new FileInputStream(FileDescriptor.in),
+                new FileOutputStream(FileDescriptor.out), new FileOutputStream(FileDescriptor.err));
+    }
+
+    /**
+     * 设置等待输入时显示的提示符
+     * @param prompt 提示符，为null时不显示
+     */
+    public void setPrompt(String prompt) {
+        this.prompt = prompt;
+    }
+
+    /**
+     * 正在处理的行处理完之后结束{@code #run(InputStream, OutputStream, OutputStream)}
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * 读取in中的命令并依次处理，直到in结束或者调用了{@code #stop()}
+     * 运行期间System.out被替换成写入out的缓冲流，返回前会刷新并恢复原来的System.out，in与out不会被关闭
+     * @param in 输入，要求是UTF-8(或ASCII)编码的
+     * @param out 处理函数的输出写入的地方
+     * @param err 没有处理成功的行写入的地方
+     * @return 没有处理成功的行数
+     * @throws IOException 读写失败
+     */
+    public long run(InputStream in, OutputStream out, OutputStream err) throws IOException {
+        stopped = false;
+        PrintStream previous = System.out;
+        PrintStream output = buffered(out);
+        PrintStream errors = buffered(err);
+        System.setOut(output);
+        long failed = 0;
+        try {
+            ByteLine line = new ByteLine();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int start = 0;      //还没有处理的内容的开头
+            int limit = 0;      //读到的内容的结尾
+            int scanned = 0;    //start之后已经确认没有换行符的位置
+            int bits = 0;       //start到scanned之间的字节按位或的结果，小于0时含有非ASCII字符
+            boolean eof = false;
+            while (!stopped) {
+                int end = scanned;
+                while (end < limit && buffer[end] != '\n') {
+                    bits |= buffer[end++];
+                }
+                if (end == limit && !eof) {
+                    //没有完整的行了，把剩下的内容移到开头，放不下时扩大缓冲区，然后读取更多输入
+                    scanned = end - start;
+                    if (start > 0) {
+                        System.arraycopy(buffer, start, buffer, 0, limit - start);
+                        limit -= start;
+                        start = 0;
+                    } else if (limit == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                    if (in.available() <= 0) {
+                        //接下来可能阻塞，先把已经处理的结果交给用户
+                        String prompt = this.prompt;
+                        if (prompt != null && limit == 0) output.print(prompt);
+                        output.flush();
+                        errors.flush();
+                    }
+                    int count = in.read(buffer, limit, buffer.length - limit);
+                    if (count == -1) eof = true;
+                    else limit += count;
+                    continue;
+                }
+                int contentEnd = end;
+                if (contentEnd > start && buffer[contentEnd - 1] == '\r') contentEnd--;
+                if (contentEnd > start) {
+                    CharSequence content;
+                    if (bits >= 0) {
+                        line.set(buffer, start, contentEnd);
+                        content = line;
+                    } else {
+                        content = new String(buffer, start, contentEnd - start, StandardCharsets.UTF_8);
+                    }
+                    if (!process(content)) {
+                        failed++;
+                        errors.print("unhandled: ");
+                        errors.println(content);
+                    }
+                }
+                if (end == limit) break;
+                start = end + 1;
+                scanned = start;
+                bits = 0;
+            }
+        } finally {
+            System.setOut(previous);
+            output.flush();
+            errors.flush();
+        }
+        return failed;
+    }
+
+    private boolean process(CharSequence content) {
+        try {
+            return analyzer.process(content);
+        } catch (RuntimeException e) {
+            e.printStackTrace(System.out);
+            return false;
+        }
+    }
+
+    private static PrintStream buffered(OutputStream out) {
+        try {
+            return new PrintStream(new BufferedOutputStream(out, BUFFER_SIZE), false, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * 输入缓冲区中只含有ASCII字符的一行，每个字节就是一个字符
+     * 同一个对象会被用来表示每一行，而缓冲区的内容会被之后的输入覆盖，所以处理函数不应持有它，
+     * subSequence与toString都会返回新的String
+     */
+    private static final class ByteLine implements CharSequence {
+
+        private byte[] bytes;
+        private int start;
+        private int length;
+
+        void set(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.length = end - start;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) throw new StringIndexOutOfBoundsException(index);
+            return (char) bytes[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new StringIndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + length);
+            }
+            return new String(bytes, this.start + start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+}
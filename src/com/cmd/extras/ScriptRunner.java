@@ -0,0 +1,279 @@
+package com.cmd.extras;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.cmd.core.CommandAnalyzer;
+
+/**
+ * 命令脚本的执行器，把脚本文件通过{@code FileChannel#map}映射到内存中，直接在映射的字节上寻找行的边界
+ * <p>
+ * 脚本中的每一行是一条(或由命令分隔符分开的多条)命令，空行会被跳过，行尾的\r会被忽略
+ * 每一行交给{@code CommandAnalyzer#process(CharSequence)}处理，拆分多条命令的规则与直接调用process时相同
+ * 对于只含有ASCII字符的行，解析器直接在映射的字节上查找命令，不会为这一行创建String，
+ * 只有处理函数真正需要参数时才会把参数所在的那一段字节变成String
+ * 含有非ASCII字符的行按UTF-8解码后再交给解析器
+ * <p>
+ * 文件按段映射，每段最多{@code #MAX_REGION}个字节，一行不能跨越两段时会从这一行的开头重新映射，
+ * 所以超过2G的脚本也可以执行，但单独的一行不能超过一段的长度
+ * <p>
+ * 执行完成后返回一份{@code Report}，其中记录了执行的行数、耗时以及处理失败的行
+ * <pre>
+ * ScriptRunner.Report report = new ScriptRunner(FastAnalyzer.getInstance()).run(Paths.get("replay.txt"));
+ * System.out.println(report);
+ * </pre>
+ * 整个脚本在调用run的线程中依次执行，一个ScriptRunner对象可以被多个线程同时使用
+ *
+ * @version 1.0
+ */
+public class ScriptRunner {
+
+    //一次映射的最大字节数
+    public static final int MAX_REGION = 1 << 30;
+    //默认最多记录的失败行数
+    public static final int DEFAULT_FAILURE_LIMIT = 1000;
+
+    private final CommandAnalyzer analyzer;
+    private final int failureLimit;
+
+    /**
+     * @param analyzer 执行脚本所用的解析器，推荐使用FastAnalyzer
+     */
+    public ScriptRunner(CommandAnalyzer analyzer) {
+        this(analyzer, DEFAULT_FAILURE_LIMIT);
+    }
+
+    /**
+     * @param analyzer 执行脚本所用的解析器，推荐使用FastAnalyzer
+     * @param failureLimit 报告中最多记录多少个失败的行，超过的只计数不记录
+     */
+    public ScriptRunner(CommandAnalyzer analyzer, int failureLimit) {
+        if (failureLimit < 0) throw new IllegalArgumentException("failureLimit < 0");
+        this.analyzer = analyzer;
+        this.failureLimit = failureLimit;
+    }
+
+    /**
+     * 执行一个命令脚本
+     * @param script 脚本文件的路径，要求是UTF-8(或ASCII)编码的
+     * @return 执行报告
+     * @throws IOException 文件读取失败或者有一行超过了{@code #MAX_REGION}个字节
+     */
+    public Report run(Path script) throws IOException {
+        Report report = new Report(failureLimit);
+        long begin = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(script, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteLine line = new ByteLine();
+            long position = 0;
+            long lineNumber = 0;
+            while (position < size) {
+                int length = (int) Math.min(MAX_REGION, size - position);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length == size;
+                int lineStart = 0;
+                while (lineStart < length) {
+                    //寻找行尾，同时检查这一行是否只有ASCII字符
+                    int lineEnd = lineStart;
+                    int bits = 0;
+                    while (lineEnd < length) {
+                        byte b = region.get(lineEnd);
+                        if (b == '\n') break;
+                        bits |= b;
+                        lineEnd++;
+                    }
+                    //这一行被截断在段的末尾，从这一行开头重新映射
+                    if (lineEnd == length && !last) {
+                        if (lineStart == 0) throw new IOException("line " + (lineNumber + 1)
+                                + " is longer than " + MAX_REGION + " bytes");
+                        break;
+                    }
+                    lineNumber++;
+                    int contentEnd = lineEnd;
+                    if (contentEnd > lineStart && region.get(contentEnd - 1) == '\r') contentEnd--;
+                    if (contentEnd > lineStart) {
+                        CharSequence content;
+                        if (bits >= 0) {
+                            line.set(region, lineStart, contentEnd);
+                            content = line;
+                        } else {
+                            content = decode(region, lineStart, contentEnd);
+                        }
+                        if (!analyzer.process(content)) {
+                            report.fail(lineNumber, content.toString());
+                        }
+                        report.lines++;
+                    }
+                    lineStart = lineEnd + 1;
+                }
+                position += Math.min(lineStart, length);
+            }
+        }
+        report.nanos = System.nanoTime() - begin;
+        return report;
+    }
+
+    private static String decode(MappedByteBuffer region, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = region.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 映射的字节中只含有ASCII字符的一行，每个字节就是一个字符
+     * 同一个对象会被用来表示脚本中的每一行，所以处理函数不应持有它，subSequence与toString都会返回新的String
+     */
+    private static final class ByteLine implements CharSequence {
+
+        private MappedByteBuffer region;
+        private int start;
+        private int length;
+
+        void set(MappedByteBuffer region, int start, int end) {
+            this.region = region;
+            this.start = start;
+            this.length = end - start;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) throw new StringIndexOutOfBoundsException(index);
+            return (char) region.get(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new StringIndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + length);
+            }
+            char[] chars = new char[end - start];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) region.get(this.start + start + i);
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+
+    /**
+     * 一次执行的报告
+     */
+    public static final class Report {
+
+        private final int failureLimit;
+        private final List<Failure> failures = new ArrayList<>();
+        private long lines;             //执行的行数，不包括空行
+        private long failed;            //失败的行数
+        private long nanos;             //耗时
+
+        private Report(int failureLimit) {
+            this.failureLimit = failureLimit;
+        }
+
+        private void fail(long lineNumber, String content) {
+            failed++;
+            if (failures.size() < failureLimit) failures.add(new Failure(lineNumber, content));
+        }
+
+        /**
+         * @return 执行的行数，不包括空行
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        /**
+         * @return 处理失败的行数
+         */
+        public long getFailedCount() {
+            return failed;
+        }
+
+        /**
+         * @return 处理失败的行，最多记录构造ScriptRunner时指定的个数
+         */
+        public List<Failure> getFailures() {
+            return Collections.unmodifiableList(failures);
+        }
+
+        /**
+         * @return 执行耗时(纳秒)
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return 每秒执行的行数
+         */
+        public double linesPerSecond() {
+            return nanos == 0 ? 0 : lines * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(lines).append(" lines in ").append(nanos / 1000000).append("ms, ")
+                    .append((long) linesPerSecond()).append(" lines/s, ")
+                    .append(failed).append(" failed");
+            for (Failure failure : failures) {
+                builder.append('\n').append(failure);
+            }
+            if (failed > failures.size()) {
+                builder.append("\n... ").append(failed - failures.size()).append(" more");
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 处理失败的一行
+     */
+    public static final class Failure {
+
+        private final long lineNumber;
+        private final String content;
+
+        private Failure(long lineNumber, String content) {
+            this.lineNumber = lineNumber;
+            this.content = content;
+        }
+
+        /**
+         * @return 行号，从1开始
+         */
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return 这一行的内容
+         */
+        public String getContent() {
+            return content;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + lineNumber + ": " + content;
+        }
+    }
+}
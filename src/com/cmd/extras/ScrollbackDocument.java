@@ -0,0 +1,112 @@
+package com.cmd.extras;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.GapContent;
+import javax.swing.text.PlainDocument;
+
+/**
+ * 有容量上限的纯文本Document，CommandWindow用它保存回滚区的内容，使长时间运行的窗口占用的内存有上限
+ * <p>
+ * 内容保存在GapContent(间隙缓冲区)中，窗口中的修改几乎都发生在末尾，间隙一直停在末尾附近，追加是O(1)的
+ * 但从开头删除内容时要把间隙移到开头，需要移动所有剩下的内容，同时每行对应的Element数组也要整体前移，
+ * 如果每追加一行就删掉最旧的一行，每次删除都是O(n)的
+ * 所以超出上限时一次删掉最旧的约1/4，剩下的行数及字符数都不超过上限的3/4，
+ * 之后至少要再追加上限的1/4才会再次删除，删除的开销平摊到每个追加的字符上是O(1)的
+ * <p>
+ * 删除总是从某一行的开头开始，只有最后一行本身就超过了字符数的上限时才会从行中间截断
+ * 在末尾追加的内容本身就超过字符数的上限时只保留最后的部分，所以一次大量的输出也不会突破上限
+ * 间隙缓冲区的数组不会缩小，最多占用上限的两倍左右
+ * <p>
+ * 和其他Swing组件一样，只能在EDT中修改
+ *
+ * @version 1.0
+ */
+public class ScrollbackDocument extends PlainDocument {
+
+    private static final long serialVersionUID = -2417795052913286651L;
+
+    private int maxLines;
+    private int maxChars;
+
+    /**
+     * @param maxLines 最多保留的行数，0为不限制
+     * @param maxChars 最多保留的字符数，0为不限制
+     */
+    public ScrollbackDocument(int maxLines, int maxChars) {
+        super(new GapContent(1024));
+        setLimit(maxLines, maxChars);
+    }
+
+    /**
+     * 设置上限，当前的内容超出新的上限时立即删除最旧的部分
+     * @param maxLines 最多保留的行数，0为不限制
+     * @param maxChars 最多保留的字符数，0为不限制
+     */
+    public void setLimit(int maxLines, int maxChars) {
+        if (maxLines < 0 || maxChars < 0) throw new IllegalArgumentException("negative limit");
+        this.maxLines = maxLines;
+        this.maxChars = maxChars;
+        trim();
+    }
+
+    /**
+     * @return 最多保留的行数，0为不限制
+     */
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    /**
+     * @return 最多保留的字符数，0为不限制
+     */
+    public int getMaxChars() {
+        return maxChars;
+    }
+
+    @Override
+    public void insertString(int offs, String str, AttributeSet a) throws BadLocationException {
+        if (str == null || str.isEmpty()) return;
+        //前面的部分插入后也会马上被删掉，直接只插入最后的部分
+        if (maxChars > 0 && str.length() > maxChars && offs == getLength()) {
+            str = str.substring(str.length() - maxChars);
+        }
+        super.insertString(offs, str, a);
+        trim();
+    }
+
+    /**
+     * 行数或字符数超出上限时删除最旧的内容，直到两者都不超过上限的3/4
+     */
+    private void trim() {
+        Element root = getDefaultRootElement();
+        int lines = root.getElementCount();
+        int length = getLength();
+        boolean overLines = maxLines > 0 && lines > maxLines;
+        boolean overChars = maxChars > 0 && length > maxChars;
+        if (!overLines && !overChars) return;
+        int end = 0;
+        if (maxLines > 0) {
+            int keep = Math.max(1, maxLines - maxLines / 4);
+            if (lines > keep) end = root.getElement(lines - keep).getStartOffset();
+        }
+        if (maxChars > 0) {
+            int keep = Math.max(1, maxChars - maxChars / 4);
+            if (length - end > keep) {
+                int offset = length - keep;
+                int index = root.getElementIndex(offset);
+                //从下一行的开头删起，已经是最后一行时只能从行中间截断
+                if (root.getElement(index).getStartOffset() != offset && index + 1 < lines) {
+                    offset = root.getElement(index + 1).getStartOffset();
+                }
+                end = offset;
+            }
+        }
+        try {
+            remove(0, end);
+        } catch (BadLocationException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.cmd.extras;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.reflect.InvocationTargetException;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
+
+/**
+ * 以持续的高速输出检查回滚区占用的内存有上限
+ * 以每秒10MB(可调整)的速度把80个字符一行的输出分批追加到自动换行的JTextArea中，追加在EDT中进行，
+ * EDT来不及处理时输出线程会被拖慢，最后输出实际达到的速度
+ * 每秒进行一次GC并采样堆中存活对象的大小以及文档的行数
+ * <ul>
+ * <li>bounded(默认)：使用CommandWindow默认上限的ScrollbackDocument，存活对象超过上限时抛出异常
+ * <li>unbounded：使用不限制大小的PlainDocument作为对比，只输出结果
+ * </ul>
+ * 在无界面的环境中运行
+ * <pre>
+ * java com.cmd.extras.ScrollbackStress [bounded|unbounded] [秒数] [MB/s] [存活对象上限MB]
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class ScrollbackStress {
+
+    private static final int LINE_LENGTH = 80;
+    //每批输出的间隔
+    private static final int BATCH_MILLIS = 10;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        boolean bounded = args.length == 0 || !args[0].equals("unbounded");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int megabytesPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        long ceiling = (args.length > 3 ? Long.parseLong(args[3]) : 64) << 20;
+
+        Document document = bounded
+                ? new ScrollbackDocument(CommandWindow.DEFAULT_SCROLLBACK_LINES, CommandWindow.DEFAULT_SCROLLBACK_CHARS)
+                : new PlainDocument();
+        JTextArea[] holder = new JTextArea[1];
+        SwingUtilities.invokeAndWait(() -> {
+            JTextArea textArea = new JTextArea(document);
+            textArea.setLineWrap(true);
+            textArea.setSize(800, 600);
+            holder[0] = textArea;
+        });
+        JTextArea textArea = holder[0];
+
+        int linesPerBatch = Math.max(1, (megabytesPerSecond << 20) / LINE_LENGTH * BATCH_MILLIS / 1000);
+        String[] batches = new String[16];
+        for (int i = 0; i < batches.length; i++) batches[i] = batch(i * linesPerBatch, linesPerBatch);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long maxLive = 0;
+        long written = 0;
+        long start = System.nanoTime();
+        long nextBatch = start;
+        long nextSample = start + 1000000000L;
+        long end = start + seconds * 1000000000L;
+        int batch = 0;
+        while (System.nanoTime() < end) {
+            String text = batches[batch++ % batches.length];
+            append(textArea, text);
+            written += text.length();
+            long now = System.nanoTime();
+            if (now >= nextSample) {
+                long live = sample(memory);
+                maxLive = Math.max(maxLive, live);
+                System.out.printf("%3ds: %d MB written, %d lines kept, %d MB live%n",
+                        (now - start) / 1000000000L, written >> 20, lines(document), live >> 20);
+                nextSample += 1000000000L;
+            }
+            nextBatch += BATCH_MILLIS * 1000000L;
+            long wait = nextBatch - System.nanoTime();
+            if (wait > 0) Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        }
+        long nanos = System.nanoTime() - start;
+        long live = sample(memory);
+        maxLive = Math.max(maxLive, live);
+        System.out.printf("%s: %d MB in %d ms (%.1f MB/s), %d lines kept, max live heap %d MB%n",
+                bounded ? "bounded" : "unbounded", written >> 20, nanos / 1000000,
+                written * 1e9 / nanos / (1 << 20), lines(document), maxLive >> 20);
+        if (bounded && maxLive > ceiling) {
+            throw new IllegalStateException("live heap " + (maxLive >> 20) + " MB exceeds " + (ceiling >> 20) + " MB");
+        }
+    }
+
+    private static String batch(int first, int lines) {
+        StringBuilder builder = new StringBuilder(lines * LINE_LENGTH);
+        for (int i = 0; i < lines; i++) {
+            int lineStart = builder.length();
+            builder.append("line ").append(first + i).append(' ');
+            while (builder.length() - lineStart < LINE_LENGTH - 1) builder.append('.');
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void append(JTextArea textArea, String text) throws InterruptedException {
+        try {
+            SwingUtilities.invokeAndWait(() -> textArea.append(text));
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static long sample(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static int lines(Document document) {
+        return document.getDefaultRootElement().getElementCount();
+    }
+}
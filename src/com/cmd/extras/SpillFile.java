@@ -0,0 +1,249 @@
+package com.cmd.extras;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 保存大量输出的临时文件，内容以UTF-8编码追加到文件末尾，读取时通过{@code FileChannel#read(ByteBuffer, long)}按位置读取
+ * <p>
+ * 不在堆中保存内容，只保存一个稀疏的行索引，每{@code #INDEX_INTERVAL}行记录一次行首在文件中的位置，
+ * 读取某一行时从前一个记录的位置向后找最多INDEX_INTERVAL-1个换行符，所以几百兆的输出只占用几百K的堆
+ * 读取时文件中的一段被缓存在{@code #WINDOW_SIZE}字节的窗口中，绘制一屏的内容一般只需要读一两次
+ * <p>
+ * 不使用FileChannel#map，映射的内存要等到被回收时才会释放，在Windows上映射还没有释放的文件无法删除，
+ * 关闭之后就连deleteOnExit也删不掉，几百兆的临时文件会一直留在磁盘上
+ * <p>
+ * 追加及读取都只能在同一个线程(一般是EDT)中进行，
+ * 只有{@code #find(byte[], long, long)}可以在其他线程中调用，它使用自己的缓冲区，只读取调用时已经写入的部分
+ * 关闭时删除文件
+ *
+ * @version 1.1
+ */
+public class SpillFile implements Closeable {
+
+    //每隔多少行记录一次行首的位置
+    public static final int INDEX_INTERVAL = 64;
+    //读取时缓存的字节数
+    public static final int WINDOW_SIZE = 64 * 1024;
+    //查找时一次读取的字节数
+    public static final int FIND_BUFFER_SIZE = 1024 * 1024;
+    //读取一行时最多读取的字节数，超出的部分不会显示
+    public static final int MAX_LINE_BYTES = 4096;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer encoded = ByteBuffer.allocate(64 * 1024);
+    //缓存着从windowStart开始的window.limit()个字节，windowStart为-1时没有内容
+    private final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+    private long windowStart = -1;
+    //第k*INDEX_INTERVAL行的行首位置
+    private long[] index = new long[1024];
+    private volatile long size;
+    private long newlines;
+    //最后一个换行符之后的位置
+    private long lastLineStart;
+
+    /**
+     * 在系统的临时目录中创建一个临时文件
+     * @throws IOException 创建失败
+     */
+    public SpillFile() throws IOException {
+        path = Files.createTempFile("cmd-output-", ".txt");
+        path.toFile().deleteOnExit();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @return 临时文件的路径
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return 已经写入的字节数
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return 行数，最后一行没有换行符时也算一行
+     */
+    public long lineCount() {
+        return size == lastLineStart ? newlines : newlines + 1;
+    }
+
+    /**
+     * 把text以UTF-8编码追加到文件末尾
+     * @param text 要追加的内容
+     * @throws IOException 写入失败
+     */
+    public void append(CharSequence text) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        boolean done = false;
+        while (!done) {
+            done = encoder.encode(chars, encoded, true).isUnderflow() && encoder.flush(encoded).isUnderflow();
+            encoded.flip();
+            indexLines(encoded);
+            while (encoded.hasRemaining()) {
+                size += channel.write(encoded, size);
+            }
+            encoded.clear();
+        }
+    }
+
+    /**
+     * 记录buffer中的换行符，buffer中的内容将被写在size处
+     */
+    private void indexLines(ByteBuffer buffer) {
+        byte[] bytes = buffer.array();
+        int from = buffer.arrayOffset() + buffer.position();
+        int to = buffer.arrayOffset() + buffer.limit();
+        for (int i = from; i < to; i++) {
+            if (bytes[i] != '\n') continue;
+            newlines++;
+            lastLineStart = size + (i - from) + 1;
+            if (newlines % INDEX_INTERVAL == 0) {
+                int slot = (int) (newlines / INDEX_INTERVAL);
+                if (slot == index.length) index = Arrays.copyOf(index, slot * 2);
+                index[slot] = lastLineStart;
+            }
+        }
+    }
+
+    /**
+     * @param line 行号，从0开始，不能超过换行符的个数
+     * @return 这一行的行首在文件中的位置
+     */
+    private long lineStart(long line) {
+        long position = index[(int) (line / INDEX_INTERVAL)];
+        for (long skip = line % INDEX_INTERVAL; skip > 0; position++) {
+            if (byteAt(position) == '\n') skip--;
+        }
+        return position;
+    }
+
+    /**
+     * 读取一行，不包括行尾的换行符，超过{@code #MAX_LINE_BYTES}的部分会被截掉
+     * @param line 行号，从0开始
+     * @return 这一行的内容
+     */
+    public String readLine(long line) {
+        if (line < 0 || line >= lineCount()) throw new IndexOutOfBoundsException("line " + line);
+        long start = lineStart(line);
+        long end = Math.min(size, start + MAX_LINE_BYTES);
+        byte[] bytes = new byte[(int) (end - start)];
+        int length = 0;
+        for (long position = start; position < end; position++) {
+            byte b = byteAt(position);
+            if (b == '\n') break;
+            bytes[length++] = b;
+        }
+        if (length > 0 && bytes[length - 1] == '\r') length--;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param position 文件中的位置
+     * @return 这一行的行号
+     */
+    public long lineOf(long position) {
+        if (position < 0 || position > size) throw new IndexOutOfBoundsException("position " + position);
+        //最后一个行首位置不大于position的记录
+        int low = 0;
+        int high = (int) (newlines / INDEX_INTERVAL);
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (index[middle] <= position) low = middle;
+            else high = middle - 1;
+        }
+        long line = (long) low * INDEX_INTERVAL;
+        for (long p = index[low]; p < position; p++) {
+            if (byteAt(p) == '\n') line++;
+        }
+        return line;
+    }
+
+    private byte byteAt(long position) {
+        long offset = position - windowStart;
+        if (windowStart < 0 || offset < 0 || offset >= window.limit()) {
+            fill(position);
+            offset = 0;
+        }
+        return window.get((int) offset);
+    }
+
+    /**
+     * 从position开始读满窗口，文件已经追加的内容只会变长不会改变，所以窗口在追加之后依然有效
+     */
+    private void fill(long position) {
+        if (position >= size) throw new IndexOutOfBoundsException("position " + position);
+        window.clear();
+        window.limit((int) Math.min(WINDOW_SIZE, size - position));
+        try {
+            while (window.hasRemaining()) {
+                if (channel.read(window, position + window.position()) < 0) break;
+            }
+        } catch (IOException e) {
+            windowStart = -1;
+            throw new IllegalStateException("failed to read " + path, e);
+        }
+        window.flip();
+        windowStart = position;
+    }
+
+    /**
+     * 在文件的[from, to)之间查找pattern，使用自己的缓冲区，可以在其他线程中调用
+     * @param pattern 要查找的字节序列，一般是UTF-8编码的字符串
+     * @param from 开始查找的位置
+     * @param to 查找的结尾，不能超过调用时的{@code #size()}
+     * @return 找到的第一个位置，没有找到返回-1
+     * @throws IOException 读取失败
+     */
+    public long find(byte[] pattern, long from, long to) throws IOException {
+        if (pattern.length == 0) return from;
+        byte first = pattern[0];
+        ByteBuffer buffer = ByteBuffer.allocate(FIND_BUFFER_SIZE + pattern.length - 1);
+        byte[] bytes = buffer.array();
+        for (long start = from; start < to - pattern.length + 1; start += FIND_BUFFER_SIZE) {
+            //相邻的两块重叠pattern.length-1个字节，跨过边界的匹配也能找到
+            buffer.clear();
+            buffer.limit((int) Math.min(bytes.length, to - start));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) break;
+            }
+            int last = buffer.position() - pattern.length;
+            for (int i = 0; i <= last; i++) {
+                if (bytes[i] != first) continue;
+                int j = 1;
+                while (j < pattern.length && bytes[i + j] == pattern[j]) j++;
+                if (j == pattern.length) return start + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 关闭并删除临时文件
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+}
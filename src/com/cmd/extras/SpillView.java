@@ -0,0 +1,215 @@
+package com.cmd.extras;
+
+import java.awt.Color;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
+import javax.swing.JOptionPane;
+import javax.swing.JViewport;
+import javax.swing.KeyStroke;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+/**
+ * 显示{@code SpillFile}中的内容的组件，放在JScrollPane中使用
+ * <p>
+ * 组件的高度是文件的行数乘以行高，所以滚动条对应着整个文件，
+ * 但绘制时只读取并绘制可见区域内的那几行，不论文件有多大，每次绘制的开销与内存占用都只和窗口的大小有关
+ * 超过{@code #MAX_HEIGHT}像素的部分(约一亿行)无法滚动到
+ * <p>
+ * ctrl+F输入要查找的内容，F3查找下一个，查找在后台线程中直接扫描临时文件，找到后滚动到那一行并高亮显示
+ * 文件变长后需要调用{@code #refresh()}，所有方法都只能在EDT中调用
+ *
+ * @version 1.0
+ */
+public class SpillView extends JComponent implements Scrollable {
+
+    private static final long serialVersionUID = 6203874217458903467L;
+
+    //组件的最大高度
+    public static final int MAX_HEIGHT = Integer.MAX_VALUE / 2;
+    private static final int PADDING = 4;
+    private static final Color HIGHLIGHT = new Color(255, 230, 120);
+
+    private final SpillFile file;
+    private long highlightLine = -1;
+    //上一次找到的位置，下一次从它之后开始查找
+    private long lastMatch = -1;
+    private String query;
+    private CompletableFuture<Long> searching;
+
+    /**
+     * @param file 要显示的文件
+     * @param font 字体
+     */
+    public SpillView(SpillFile file, Font font) {
+        this.file = file;
+        setFont(font);
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setFocusable(true);
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_F, KeyEvent.CTRL_DOWN_MASK), "find");
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), "findNext");
+        getActionMap().put("find", new AbstractAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                String input = JOptionPane.showInputDialog(SpillView.this, "查找", query);
+                if (input != null && !input.isEmpty()) find(input);
+            }
+        });
+        getActionMap().put("findNext", new AbstractAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (query != null) find(query);
+            }
+        });
+    }
+
+    /**
+     * @return 显示的文件
+     */
+    public SpillFile getFile() {
+        return file;
+    }
+
+    /**
+     * 文件变长后重新计算组件的高度并重绘
+     */
+    public void refresh() {
+        revalidate();
+        repaint();
+    }
+
+    private int lineHeight() {
+        return getFontMetrics(getFont()).getHeight();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        long height = file.lineCount() * lineHeight() + 2 * PADDING;
+        Container parent = getParent();
+        int width = parent instanceof JViewport ? parent.getWidth() : 640;
+        return new Dimension(width, (int) Math.min(MAX_HEIGHT, height));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        FontMetrics metrics = g.getFontMetrics(getFont());
+        int lineHeight = metrics.getHeight();
+        long lines = file.lineCount();
+        long first = Math.max(0, (clip.y - PADDING) / lineHeight);
+        long last = Math.min(lines - 1, (clip.y + clip.height - PADDING) / lineHeight);
+        g.setFont(getFont());
+        for (long line = first; line <= last; line++) {
+            int y = (int) (PADDING + line * lineHeight);
+            if (line == highlightLine) {
+                g.setColor(HIGHLIGHT);
+                g.fillRect(clip.x, y, clip.width, lineHeight);
+            }
+            g.setColor(getForeground());
+            g.drawString(file.readLine(line), PADDING, y + metrics.getAscent());
+        }
+    }
+
+    /**
+     * 滚动到某一行并高亮显示
+     * @param line 行号，从0开始
+     */
+    public void scrollToLine(long line) {
+        highlightLine = line;
+        int lineHeight = lineHeight();
+        long y = PADDING + line * lineHeight;
+        if (y > MAX_HEIGHT) return;
+        Rectangle visible = getVisibleRect();
+        //放在可见区域的中间
+        int top = (int) Math.max(0, y - (visible.height - lineHeight) / 2);
+        scrollRectToVisible(new Rectangle(0, top, 1, visible.height));
+        repaint();
+    }
+
+    /**
+     * 从上一次找到的位置之后查找text，到结尾还没找到时从头开始，找到后滚动到那一行
+     * 查找在后台线程中进行，正在查找时再次调用会被忽略
+     * @param text 要查找的内容
+     * @return 找到的行号，没有找到为-1，查找完成时已经滚动到了那一行
+     */
+    public CompletableFuture<Long> find(String text) {
+        if (searching != null && !searching.isDone()) return searching;
+        if (!text.equals(query)) lastMatch = -1;
+        query = text;
+        byte[] pattern = text.getBytes(StandardCharsets.UTF_8);
+        long from = lastMatch + 1;
+        long to = file.size();
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        searching = result;
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                long position = file.find(pattern, from, to);
+                if (position == -1 && from > 0) position = file.find(pattern, 0, Math.min(to, from + pattern.length - 1));
+                return position;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((position, e) -> SwingUtilities.invokeLater(() -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (position == -1) {
+                getToolkit().beep();
+                result.complete(-1L);
+                return;
+            }
+            lastMatch = position;
+            long line = file.lineOf(position);
+            scrollToLine(line);
+            result.complete(line);
+        }));
+        return result;
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(640, 30 * lineHeight());
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? lineHeight() : 16;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height - lineHeight() : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
@@ -3,8 +3,10 @@ package com.cmd.handler;
 import javax.swing.JFrame;
 
 import com.cmd.annotations.CommandName;
+import com.cmd.annotations.OnCallerThread;
 import com.cmd.annotations.OnlyCare;
 import com.cmd.annotations.Outline;
+import com.cmd.annotations.Serialized;
 import com.cmd.core.Analysable;
 import com.cmd.extras.CodeAssistant;
 import com.cmd.extras.CommandWindow;
@@ -12,6 +14,9 @@ import com.cmd.extras.CommandWindow;
 /**
  * 主要为了处理对CommandWindow的操作的命令，如清屏、退出、设置窗口大小提示语等
  * 正常的话这些处理函数应该耦合在CommandWindow所在的类中，这里主要是当做对cmd框架使用的一个简单demo
+ * 所有处理函数都标有OnCallerThread，异步处理时依然在提交命令的事件分发线程中调用
+ * 处理函数会替换window字段，所以这个类标有Serialized，同一个实例中的处理函数不会被同时调用
+ * 新增的处理函数也要标上OnCallerThread，否则它会在执行器中持有这个实例的锁，事件分发线程要等它释放
  *
  * 支持的命令有
  * '720p'			'设置窗口尺寸为720P'
@@ -24,15 +29,18 @@ import com.cmd.extras.CommandWindow;
  * 'window'			'max、full、nobar'
  * 'bound'			'设置窗口宽高'
  * 'hint'			'设置hint文字'
+ * 'output'			'查看写入临时文件的输出'
  * 
  * @author congxiaoyao
  * @date 2016.2.2
  * @version 2.0
  */
 
-@Outline(commandNames = {"720p","cls", "exit","version", "height","font", "close","window", "bound","hint","ecc"},
+@Outline(commandNames = {"720p","cls", "exit","version", "height","font", "close","window", "bound","hint","ecc","output"},
          outlines = {"设置窗口尺寸为720P","清屏", "退出","版本号", "设置窗口高度","设置字体大小",
-                     "设置能否用鼠标关闭窗口","max、full、nobar", "设置窗口宽高","设置hint文字","代码提示"})
+                     "设置能否用鼠标关闭窗口","max、full、nobar", "设置窗口宽高","设置hint文字","代码提示",
+                     "查看写入临时文件的输出"})
+@Serialized
 public class CommandWindowHandler extends BaseHandler {
 	
 	private CommandWindow window;
@@ -42,26 +50,41 @@ public class CommandWindowHandler extends BaseHandler {
 		this.window = window;
 	}
 
+	/**
+	 * 把window中提交的命令交给Analysable异步处理，命令处理完之后window才补上提示符
+	 * @param window 新创建的窗口
+	 */
+	private void listen(CommandWindow window) {
+		window.setOnSubmitListener(content -> {
+			Runnable done = window.deferHint();
+			getAnalysable().processAsync(content).whenComplete((result, e) -> done.run());
+		});
+	}
+
+	@OnCallerThread
 	@CommandName("restart")
 	public void restartWindow() {
 		window.closeWindow();
 		window = new CommandWindow().setVisible();
-		window.setOnSubmitListener(content -> getAnalysable().process(content));
+		listen(window);
 	}
 
 	/**
 	 * CommandName注解没有括号也是可以的
 	 */
+	@OnCallerThread
 	@CommandName
 	public void exit() {
 		window.closeWindow();
 	}
 
+	@OnCallerThread
 	@CommandName
 	public void version() {
 		System.out.println("v2.0");
 	}
 
+	@OnCallerThread
 	@CommandName("720p")
 	public void handle720P() {
 		getAnalysable().process("bound 1280 720");
@@ -71,12 +94,14 @@ public class CommandWindowHandler extends BaseHandler {
 	/**
 	 * 这就是所谓的参数拦截特性，拦截的是window命令的max参数
 	 */
+    @OnCallerThread
     @OnlyCare("max")
 	@CommandName("window")
 	public void maxSizeWindow() {
 		window.setExtendedState(JFrame.MAXIMIZED_BOTH);
 	}
 
+    @OnCallerThread
     @OnlyCare("full")
 	@CommandName("window")
 	public void handleFull() {
@@ -86,9 +111,10 @@ public class CommandWindowHandler extends BaseHandler {
 		window.setFontSize(size);
 		window.setUndecorated(true);
 		window.setVisible();
-		window.setOnSubmitListener(content -> getAnalysable().process(content));
+		listen(window);
 	}
 
+	@OnCallerThread
 	@OnlyCare("nobar")
 	@CommandName("window")
 	public void handleNoBar() {
@@ -98,9 +124,10 @@ public class CommandWindowHandler extends BaseHandler {
 		window.setFontSize(size);
 		window.setUndecorated(true);
 		window.setVisible();
-        window.setOnSubmitListener((content -> getAnalysable().process(content)));
+		listen(window);
     }
 
+	@OnCallerThread
 	@CommandName("cls")
 	public void clearCommandWindow() {
 		window.clearCommandWindow();
@@ -110,11 +137,13 @@ public class CommandWindowHandler extends BaseHandler {
 	 * 这就是所谓的自动参数类型转换，可将用户的合法输入自动转换为int型方便使用
 	 * @param height
 	 */
+	@OnCallerThread
 	@CommandName("height")
 	public void setWindowHeight(int height) {
 		window.setCommandHeight(height);
 	}
 	
+	@OnCallerThread
 	@CommandName("font")
 	public void setFontSize(int size) {
 		window.setFontSize(size);
@@ -124,6 +153,7 @@ public class CommandWindowHandler extends BaseHandler {
 	 * 布尔值类型的参数也可自动类型转换 当用户输入true/false时会自动转换为布尔类型
 	 * @param can
 	 */
+	@OnCallerThread
 	@CommandName("close")
 	public void setWindowCloseOperation(boolean can) {
 		if(can) {
@@ -135,16 +165,19 @@ public class CommandWindowHandler extends BaseHandler {
 		}
 	}
 
+	@OnCallerThread
 	@CommandName("bound")
 	public void setWindowBounds(int w , int h) {
 		window.setBounds(w, h);
 	}
 
+	@OnCallerThread
 	@CommandName
 	public void hint(String arg) {
 		window.setHint(arg);
 	}
 
+	@OnCallerThread
 	@CommandName("ecc")
 	public void enableCodeCompletion(boolean enable) {
 		if (enable) {
@@ -154,4 +187,10 @@ public class CommandWindowHandler extends BaseHandler {
 		}
 	}
 
+	@OnCallerThread
+	@CommandName("output")
+	public void showSpilledOutput() {
+		window.showSpilledOutput();
+	}
+
 }
@@ -8,7 +8,6 @@ import javax.tools.JavaCompiler;
 import javax.tools.ToolProvider;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -70,37 +69,21 @@ public class DynamicCommandHandler extends BaseHandler {
 
     @CmdDef(commandName = "delhm", description = "删除一个处理函数 请输入完整函数签名",delimiter = "null")
     public static void removeHandlingMethod(String signature) {
-        getAnalysable().forEachCommand(command -> {
-            List<HandlingMethod> handlingMethods = command.getHandlingMethods();
-            Iterator<HandlingMethod> iterator = handlingMethods.iterator();
-            while (iterator.hasNext()) {
-                HandlingMethod method = iterator.next();
-                if (signature.equals(method.getMethod().toString())) {
-                    iterator.remove();
-                }
-            }
-            if (handlingMethods.isEmpty()) {
-                System.out.print(NoneHandlingMethodException.MSG);
-            }
-        });
+        List<Command> emptied = getAnalysable().removeHandlingMethods(
+                method -> signature.equals(method.getMethod().toString()));
+        for (int i = 0; i < emptied.size(); i++) {
+            System.out.print(NoneHandlingMethodException.MSG);
+        }
         System.out.println("处理完毕");
     }
 
     @CmdDef(commandName = "delho", description = "删除一个处理类 请输入类的全名")
     public static void removeHandlingObject(String className) {
-        getAnalysable().forEachCommand(command -> {
-            List<HandlingMethod> handlingMethods = command.getHandlingMethods();
-            Iterator<HandlingMethod> iterator = handlingMethods.iterator();
-            while (iterator.hasNext()) {
-                HandlingMethod method = iterator.next();
-                if (className.equals(method.getInvoker().getClass().getName())) {
-                    iterator.remove();
-                }
-            }
-            if (handlingMethods.isEmpty()) {
-                System.out.print(NoneHandlingMethodException.MSG);
-            }
-        });
+        List<Command> emptied = getAnalysable().removeHandlingMethods(
+                method -> className.equals(method.getInvoker().getClass().getName()));
+        for (int i = 0; i < emptied.size(); i++) {
+            System.out.print(NoneHandlingMethodException.MSG);
+        }
     }
 
     @CmdDef(commandName = "reload",description = "重新加载处理类 请输入类的全名")
@@ -0,0 +1,51 @@
+package com.cmd.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 缓冲区中只含有ASCII字符的一段，每个字节就是一个字符，不会把内容复制出来
+ * 只使用绝对位置读取缓冲区，不依赖也不改变缓冲区的position，在这一段内容被使用完之前缓冲区中的这一段不能被修改
+ * subSequence与toString都会返回新的String
+ *
+ * @version 1.0
+ */
+final class AsciiSequence implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int length;
+
+    AsciiSequence(ByteBuffer buffer, int start, int length) {
+        this.buffer = buffer;
+        this.start = start;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) throw new StringIndexOutOfBoundsException(index);
+        return (char) buffer.get(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new StringIndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + length);
+        }
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) buffer.get(this.start + start + i);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+}
@@ -0,0 +1,116 @@
+package com.cmd.net;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 直接内存ByteBuffer的池，所有的缓冲区大小相同
+ * <p>
+ * 缓冲区以{@code Lease}的形式借出，Lease带有引用计数，借出时为1，
+ * 每个还在使用缓冲区中的内容的人都要先{@code Lease#retain()}，用完后{@code Lease#release()}，
+ * 计数归零时缓冲区回到池中，所以一个缓冲区可以被多个正在处理的帧共享而不必把内容复制出来
+ * 池中最多保留maxIdle个空闲的缓冲区，超出的交给GC回收
+ * <p>
+ * 需要比池中的缓冲区更大的缓冲区时可以通过{@code #lease(int)}单独分配，这样的缓冲区不会回到池中
+ *
+ * @version 1.0
+ */
+public class ByteBufferPool {
+
+    private final int bufferSize;
+    private final int maxIdle;
+    private final Queue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * @param bufferSize 每个缓冲区的大小
+     * @param maxIdle 最多保留的空闲缓冲区个数
+     */
+    public ByteBufferPool(int bufferSize, int maxIdle) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize <= 0");
+        this.bufferSize = bufferSize;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return 池中缓冲区的大小
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return 借出一个已经clear过的缓冲区
+     */
+    public Lease lease() {
+        ByteBuffer buffer = idle.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        } else {
+            idleCount.decrementAndGet();
+        }
+        return new Lease(buffer);
+    }
+
+    /**
+     * @param minCapacity 最小的容量
+     * @return 借出一个容量不小于minCapacity的缓冲区，比池中的缓冲区大时单独分配
+     */
+    public Lease lease(int minCapacity) {
+        if (minCapacity <= bufferSize) return lease();
+        return new Lease(ByteBuffer.allocateDirect(minCapacity));
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize) return;
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        idle.offer(buffer);
+    }
+
+    /**
+     * 一个借出的缓冲区及其引用计数
+     */
+    public final class Lease {
+
+        private final ByteBuffer buffer;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Lease(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return 借出的缓冲区，计数归零之后不能再使用
+         */
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        /**
+         * @return 当前的引用计数
+         */
+        public int references() {
+            return references.get();
+        }
+
+        public Lease retain() {
+            references.incrementAndGet();
+            return this;
+        }
+
+        /**
+         * 计数减一，归零时缓冲区回到池中
+         */
+        public void release() {
+            int count = references.decrementAndGet();
+            if (count == 0) recycle(buffer);
+            else if (count < 0) throw new IllegalStateException("lease released too many times");
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.cmd.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 使用二进制协议({@code FrameCodec})的命令服务端的客户端，服务端需要设置为{@code CommandServer.Protocol#FRAMES}
+ * <p>
+ * 客户端维护着一组连接，请求轮流分配给各个连接，每个请求带有客户端分配的id，
+ * 发出请求后不必等待响应就可以继续发送下一个，响应到达时根据id完成对应的CompletableFuture
+ * <p>
+ * 每个连接有一个写线程和一个读线程，调用者只是把编码好的请求放入队列，
+ * 写线程每次取出队列中积攒的所有请求，拼进同一个缓冲区后一次写出，所以大量的小命令不会变成大量的小包
+ * 连接断开时，这个连接上还没有收到响应的请求都以IOException失败，之后的请求分配给其他的连接
+ * <pre>
+ * try (CommandClient client = new CommandClient(address, 4)) {
+ *     client.submit("add 1 2").thenAccept(response -> System.out.println(response.getOutput()));
+ *     FrameCodec.Response response = client.execute("help");
+ * }
+ * </pre>
+ * 客户端是线程安全的，推荐多个线程共用一个客户端
+ *
+ * @version 1.0
+ */
+public class CommandClient implements Closeable {
+
+    //写线程一次最多拼接多少字节
+    private static final int BATCH_SIZE = 64 * 1024;
+    //读取响应的缓冲区的初始大小
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final List<Connection> connections;
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * 建立connectionCount个连接，任何一个连接建立失败都会关闭已经建立的连接并抛出异常
+     * @param address 服务端地址
+     * @param connectionCount 连接数
+     * @throws IOException 连接失败
+     */
+    public CommandClient(InetSocketAddress address, int connectionCount) throws IOException {
+        if (connectionCount <= 0) throw new IllegalArgumentException("connectionCount <= 0");
+        List<Connection> connections = new ArrayList<>(connectionCount);
+        try {
+            for (int i = 0; i < connectionCount; i++) {
+                connections.add(new Connection(SocketChannel.open(address), i));
+            }
+        } catch (IOException e) {
+            for (Connection connection : connections) {
+                connection.fail(e);
+            }
+            throw e;
+        }
+        this.connections = connections;
+        for (Connection connection : connections) {
+            connection.start();
+        }
+    }
+
+    /**
+     * 异步发送一条命令，没有期限
+     * @param command 命令
+     * @return 收到响应时完成的CompletableFuture，连接断开时以IOException失败
+     */
+    public CompletableFuture<FrameCodec.Response> submit(String command) {
+        return submit(command, 0);
+    }
+
+    /**
+     * 异步发送一条命令
+     * @param command 命令
+     * @param timeoutMillis 服务端的期限，过了期限还没有开始处理的命令会以{@code FrameCodec#EXPIRED}响应，0为没有期限
+     * @return 收到响应时完成的CompletableFuture，连接断开时以IOException失败
+     */
+    public CompletableFuture<FrameCodec.Response> submit(String command, int timeoutMillis) {
+        if (timeoutMillis < 0) throw new IllegalArgumentException("timeoutMillis < 0");
+        CompletableFuture<FrameCodec.Response> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IOException("client closed"));
+            return future;
+        }
+        byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > FrameCodec.MAX_FRAME_LENGTH - FrameCodec.REQUEST_HEADER_SIZE) {
+            future.completeExceptionally(new IOException("command is too long"));
+            return future;
+        }
+        Connection connection = pick();
+        if (connection == null) {
+            future.completeExceptionally(new IOException("no connection available"));
+            return future;
+        }
+        connection.send(new Request(nextId.getAndIncrement(), timeoutMillis, bytes, future));
+        return future;
+    }
+
+    /**
+     * 发送一条命令并等待响应，没有期限
+     * @param command 命令
+     * @return 响应
+     * @throws IOException 连接断开或等待时被中断
+     */
+    public FrameCodec.Response execute(String command) throws IOException {
+        return execute(command, 0);
+    }
+
+    /**
+     * 发送一条命令并等待响应
+     * @param command 命令
+     * @param timeoutMillis 服务端的期限，0为没有期限
+     * @return 响应
+     * @throws IOException 连接断开或等待时被中断
+     */
+    public FrameCodec.Response execute(String command, int timeoutMillis) throws IOException {
+        try {
+            return submit(command, timeoutMillis).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for response");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return 轮流选择一个还没有断开的连接，都断开了返回null
+     */
+    private Connection pick() {
+        int size = connections.size();
+        int start = Math.floorMod(nextConnection.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Connection connection = connections.get((start + i) % size);
+            if (!connection.broken) return connection;
+        }
+        return null;
+    }
+
+    /**
+     * 关闭所有的连接，还没有收到响应的请求以IOException失败
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        IOException cause = new IOException("client closed");
+        for (Connection connection : connections) {
+            connection.fail(cause);
+        }
+    }
+
+    /**
+     * 一个等待发送的请求
+     */
+    private static final class Request {
+
+        final long id;
+        final int timeoutMillis;
+        final byte[] command;
+        final CompletableFuture<FrameCodec.Response> future;
+
+        Request(long id, int timeoutMillis, byte[] command, CompletableFuture<FrameCodec.Response> future) {
+            this.id = id;
+            this.timeoutMillis = timeoutMillis;
+            this.command = command;
+            this.future = future;
+        }
+
+        int frameSize() {
+            return FrameCodec.LENGTH_SIZE + FrameCodec.REQUEST_HEADER_SIZE + command.length;
+        }
+    }
+
+    /**
+     * 一个连接，写线程批量发送请求，读线程解码响应并完成对应的CompletableFuture
+     */
+    private static final class Connection {
+
+        //关闭连接时放入队列，让写线程退出
+        private static final Request POISON = new Request(-1, 0, new byte[0], null);
+
+        final SocketChannel channel;
+        volatile boolean broken;
+        private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+        private final Map<Long, CompletableFuture<FrameCodec.Response>> waiting = new ConcurrentHashMap<>();
+        private final Thread writer;
+        private final Thread reader;
+
+        Connection(SocketChannel channel, int index) {
+            this.channel = channel;
+            writer = new Thread(this::writeLoop, "cmd-client-writer-" + index);
+            reader = new Thread(this::readLoop, "cmd-client-reader-" + index);
+            writer.setDaemon(true);
+            reader.setDaemon(true);
+        }
+
+        void start() {
+            writer.start();
+            reader.start();
+        }
+
+        void send(Request request) {
+            waiting.put(request.id, request.future);
+            queue.add(request);
+            //放入之后连接才断开时，fail可能已经清理过waiting了
+            if (broken) failWaiting(new IOException("connection closed"));
+        }
+
+        private void writeLoop() {
+            ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_SIZE);
+            List<Request> drained = new ArrayList<>();
+            try {
+                while (!broken) {
+                    drained.add(queue.take());
+                    queue.drainTo(drained);
+                    for (Request request : drained) {
+                        if (request == POISON) return;
+                        if (request.frameSize() > batch.remaining()) {
+                            flush(batch);
+                            if (request.frameSize() > batch.capacity()) {
+                                ByteBuffer large = ByteBuffer.allocate(request.frameSize());
+                                FrameCodec.encodeRequest(large, request.id, request.timeoutMillis, request.command);
+                                flush(large);
+                                continue;
+                            }
+                        }
+                        FrameCodec.encodeRequest(batch, request.id, request.timeoutMillis, request.command);
+                    }
+                    drained.clear();
+                    flush(batch);
+                }
+            } catch (InterruptedException e) {
+                fail(new IOException("writer interrupted"));
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void flush(ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void readLoop() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            try {
+                while (!broken) {
+                    if (channel.read(buffer) == -1) throw new IOException("connection closed by server");
+                    int limit = buffer.position();
+                    int position = 0;
+                    FrameCodec.Response response;
+                    while ((response = FrameCodec.decodeResponse(buffer, position, limit)) != null) {
+                        position += response.getFrameSize();
+                        CompletableFuture<FrameCodec.Response> future = waiting.remove(response.getId());
+                        if (future != null) future.complete(response);
+                    }
+                    //把不完整的帧移到开头，放不下时换一个更大的缓冲区
+                    int size = FrameCodec.frameSize(buffer, position, limit, FrameCodec.RESPONSE_HEADER_SIZE);
+                    buffer.flip().position(position);
+                    if (size > buffer.capacity()) {
+                        ByteBuffer larger = ByteBuffer.allocateDirect(size);
+                        larger.put(buffer);
+                        buffer = larger;
+                    } else {
+                        buffer.compact();
+                    }
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * 断开连接，还没有收到响应的请求以cause失败
+         */
+        void fail(IOException cause) {
+            if (!broken) {
+                broken = true;
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                queue.add(POISON);
+            }
+            failWaiting(cause);
+        }
+
+        private void failWaiting(IOException cause) {
+            for (Long id : waiting.keySet()) {
+                CompletableFuture<FrameCodec.Response> future = waiting.remove(id);
+                if (future != null) future.completeExceptionally(cause);
+            }
+        }
+    }
+}
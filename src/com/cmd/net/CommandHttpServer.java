@@ -0,0 +1,169 @@
+package com.cmd.net;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+import com.cmd.core.Analysable;
+import com.cmd.core.CommandAnalyzer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 基于JDK自带的{@code com.sun.net.httpserver.HttpServer}的命令服务端，供只能使用HTTP的工具驱动解析器
+ * <p>
+ * 只有一个接口{@code POST /cmd}，请求体是UTF-8编码的一条或多条命令，每行一条，空行会被跳过
+ * 响应是分块传输的，每条命令处理时向System.out输出的内容会在产生时直接写入响应，
+ * 每条命令之后是单独的一行{@code \4true}或{@code \4false}，与{@code CommandServer}的文本协议相同
+ * 请求体中的命令按顺序依次处理，客户端可以边读响应边等待后面的命令处理完
+ * <p>
+ * 每个请求在执行器中处理，默认为{@code CommandAnalyzer#getDefaultExecutor()}，即每个请求一个虚拟线程
+ * 连接默认是keep-alive的，由HttpServer负责复用
+ * <p>
+ * HttpServer把响应头、每一块内容及结束块分别写出，开着Nagle算法时后面的小包要等客户端延迟发送的ACK，
+ * 每个请求会多出几十毫秒，所以启动时如果没有设置过{@code sun.net.httpserver.nodelay}就将其设为true，
+ * 这个属性只在进程中第一次创建HttpServer时读取
+ * <pre>
+ * CommandHttpServer server = new CommandHttpServer(FastAnalyzer.getInstance());
+ * server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 8080));
+ * //curl --data-binary $'help\nversion' http://127.0.0.1:8080/cmd
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class CommandHttpServer implements Closeable {
+
+    public static final String PATH = "/cmd";
+    //JDK的HttpServer是否关闭Nagle算法，只在第一个HttpServer创建时读取一次
+    private static final String NODELAY = "sun.net.httpserver.nodelay";
+
+    private static final byte[] TRUE = (CommandServer.END_OF_RESPONSE + "true\n").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FALSE = (CommandServer.END_OF_RESPONSE + "false\n").getBytes(StandardCharsets.UTF_8);
+
+    private final Analysable analysable;
+    private volatile Executor executor;
+    private HttpServer server;
+    private boolean routing;            //是否调用过OutputRouter.install，关闭时与之配对uninstall
+
+    /**
+     * @param analysable 处理命令的解析器
+     */
+    public CommandHttpServer(Analysable analysable) {
+        this.analysable = analysable;
+    }
+
+    /**
+     * 设置处理请求的执行器，需要在{@code #start(InetSocketAddress)}之前设置
+     * @param executor 执行器，为null时使用默认的执行器
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 绑定地址并开始处理请求
+     * @param address 监听的地址，端口为0时由系统分配
+     * @return 实际监听的地址
+     * @throws IOException 绑定失败
+     */
+    public synchronized InetSocketAddress start(InetSocketAddress address) throws IOException {
+        if (server != null) throw new IllegalStateException("server already started");
+        if (System.getProperty(NODELAY) == null) System.setProperty(NODELAY, "true");
+        server = HttpServer.create(address, 0);
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor != null ? executor : CommandAnalyzer.getDefaultExecutor());
+        OutputRouter.install();
+        routing = true;
+        server.start();
+        return server.getAddress();
+    }
+
+    /**
+     * 立即停止服务，正在处理的请求会被中断，同时卸载{@code OutputRouter}
+     */
+    @Override
+    public synchronized void close() {
+        if (server != null) server.stop(0);
+        if (routing) {
+            routing = false;
+            OutputRouter.uninstall();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            //长度为0表示分块传输
+            exchange.sendResponseHeaders(200, 0);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+            Output output = new Output(exchange.getResponseBody());
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                process(line, output);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 处理一条命令，输出直接写入响应，最后写入结束的标志并把这一块发送出去
+     */
+    private void process(String command, Output output) throws IOException {
+        output.last = '\n';
+        boolean handled;
+        try {
+            handled = OutputRouter.capture(output, () -> analysable.process(command));
+        } catch (RuntimeException e) {
+            byte[] message = e.toString().getBytes(StandardCharsets.UTF_8);
+            output.write(message, 0, message.length);
+            handled = false;
+        }
+        if (output.last != '\n') output.write('\n');
+        output.write(handled ? TRUE : FALSE);
+        output.flush();
+    }
+
+    /**
+     * 响应体，记录最后写入的字节以便在结束标志前补上换行
+     */
+    private static final class Output extends OutputStream {
+
+        private final OutputStream out;
+        int last = '\n';
+
+        Output(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            last = b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            out.write(b, off, len);
+            last = b[off + len - 1];
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,637 @@
+package com.cmd.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.cmd.core.Analysable;
+import com.cmd.core.CommandAnalyzer;
+
+/**
+ * 基于{@code java.nio.channels.Selector}的命令服务端，使得其他进程可以通过TCP连接驱动解析器
+ * <p>
+ * 默认的协议是按行划分的文本协议，编码为UTF-8
+ * <ul>
+ * <li>客户端每发送一行(以\n结尾，行尾的\r会被忽略)就是一次{@code Analysable#process(String)}
+ * <li>服务端对每一行都给出一个响应，内容是处理函数向System.out输出的内容，
+ * 之后是单独的一行{@code \4true}或{@code \4false}，即process的返回值，以此标志这个响应的结束
+ * <li>同一个连接中的命令按发送的顺序依次处理，响应的顺序与命令的顺序相同
+ * </ul>
+ * 也可以通过{@code #setProtocol(Protocol)}改用二进制协议，每个请求带有id，客户端可以连续发送大量请求，
+ * 响应按处理完成的顺序乱序返回，格式见{@code FrameCodec}
+ * <p>
+ * 处理函数的输出通过{@code OutputRouter}送回到提交命令的连接中，不会写入全局的System.out，
+ * 关闭时卸载OutputRouter，所有服务端都关闭后System.out恢复原样
+ * <p>
+ * 服务端使用少量固定的事件循环线程，每个线程有自己的Selector，第一个线程同时负责接受连接，
+ * 接受的连接轮流分配给各个事件循环，之后这个连接的读写都只在它所属的事件循环中进行
+ * 事件循环只负责读写及按行切分，命令在执行器(默认同{@code CommandAnalyzer#getDefaultExecutor()})中处理，
+ * 所以耗时的处理函数不会拖慢其他连接的读写
+ * 一个连接中积压的命令达到{@code #MAX_PENDING}条(二进制协议为{@code #MAX_IN_FLIGHT}个)时暂停读取这个连接，
+ * 直到积压的命令被处理掉一半
+ * <pre>
+ * CommandServer server = new CommandServer(FastAnalyzer.getInstance());
+ * InetSocketAddress address = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class CommandServer implements Closeable {
+
+    //响应结束的标志，其后紧跟着true或false
+    public static final char END_OF_RESPONSE = '\4';
+    //默认的一行的最大字节数，超过的连接会被关闭
+    public static final int DEFAULT_MAX_LINE = 64 * 1024;
+    //文本协议中一个连接最多积压的命令条数
+    public static final int MAX_PENDING = 64;
+    //二进制协议中一个连接最多同时处理的请求个数
+    public static final int MAX_IN_FLIGHT = 1024;
+    //二进制协议读取时使用的缓冲区的大小
+    public static final int FRAME_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 服务端使用的协议
+     */
+    public enum Protocol {
+        //按行划分的文本协议，同一个连接中的命令依次处理
+        LINES,
+        //带有请求id的二进制帧，同一个连接中的请求可以同时处理，响应乱序返回，见FrameCodec
+        FRAMES
+    }
+
+    private static final byte[] TRUE = (END_OF_RESPONSE + "true\n").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FALSE = (END_OF_RESPONSE + "false\n").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NO_OUTPUT = new byte[0];
+
+    private final Analysable analysable;
+    private final EventLoop[] loops;
+    private final int maxLineLength;
+    private volatile Executor executor;
+    private volatile Protocol protocol = Protocol.LINES;
+    private ByteBufferPool pool;
+    private ServerSocketChannel server;
+    private int nextLoop;               //下一个连接分配给哪个事件循环，只在接受连接的线程中使用
+    private volatile boolean closed;
+    private boolean routing;            //是否调用过OutputRouter.install，关闭时与之配对uninstall
+
+    /**
+     * 使用与CPU核数相当(最多4个)的事件循环线程
+     * @param analysable 处理命令的解析器
+     */
+    public CommandServer(Analysable analysable) {
+        this(analysable, Math.min(4, Runtime.getRuntime().availableProcessors()), DEFAULT_MAX_LINE);
+    }
+
+    /**
+     * @param analysable 处理命令的解析器
+     * @param loopCount 事件循环线程的个数
+     * @param maxLineLength 一行的最大字节数，超过的连接会被关闭
+     */
+    public CommandServer(Analysable analysable, int loopCount, int maxLineLength) {
+        if (loopCount <= 0) throw new IllegalArgumentException("loopCount <= 0");
+        if (maxLineLength <= 0) throw new IllegalArgumentException("maxLineLength <= 0");
+        this.analysable = analysable;
+        this.loops = new EventLoop[loopCount];
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * 设置处理命令的执行器，需要在{@code #start(InetSocketAddress)}之前设置
+     * @param executor 执行器，为null时使用默认的执行器
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 设置服务端使用的协议，需要在{@code #start(InetSocketAddress)}之前设置，默认为{@code Protocol#LINES}
+     * @param protocol 协议
+     */
+    public void setProtocol(Protocol protocol) {
+        if (protocol == null) throw new NullPointerException("protocol");
+        this.protocol = protocol;
+    }
+
+    /**
+     * 绑定地址并启动事件循环线程
+     * @param address 监听的地址，端口为0时由系统分配
+     * @return 实际监听的地址
+     * @throws IOException 绑定失败
+     */
+    public synchronized InetSocketAddress start(InetSocketAddress address) throws IOException {
+        if (server != null) throw new IllegalStateException("server already started");
+        if (executor == null) executor = CommandAnalyzer.getDefaultExecutor();
+        if (protocol == Protocol.FRAMES) pool = new ByteBufferPool(FRAME_BUFFER_SIZE, loops.length * 16);
+        OutputRouter.install();
+        routing = true;
+        server = ServerSocketChannel.open();
+        try {
+            server.bind(address);
+            server.configureBlocking(false);
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop(i);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        loops[0].execute(() -> loops[0].register(server, SelectionKey.OP_ACCEPT, null));
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * @return 实际监听的地址，还没有启动返回null
+     */
+    public synchronized InetSocketAddress getLocalAddress() throws IOException {
+        return server == null ? null : (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * 停止接受连接并关闭所有的连接，正在处理的命令会继续处理完，但响应不会再发送
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        for (EventLoop loop : loops) {
+            if (loop != null) loop.selector.wakeup();
+        }
+        if (routing) {
+            routing = false;
+            OutputRouter.uninstall();
+        }
+        if (server != null) server.close();
+    }
+
+    /**
+     * 在接受连接的事件循环中调用
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            EventLoop loop = loops[nextLoop];
+            nextLoop = (nextLoop + 1) % loops.length;
+            SocketChannel accepted = channel;
+            loop.execute(() -> loop.register(accepted, SelectionKey.OP_READ, protocol == Protocol.LINES
+                    ? new LineConnection(accepted, loop) : new FrameConnection(accepted, loop)));
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 一个事件循环，拥有一个Selector及一个线程，注册在这个Selector上的通道只在这个线程中读写
+     */
+    private final class EventLoop implements Runnable {
+
+        final Selector selector;
+        final Thread thread;
+        //其他线程交给这个事件循环执行的任务
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        EventLoop(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "cmd-server-" + index);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * 在这个事件循环的线程中执行task，可以在任何线程中调用
+         * 即使在事件循环自己的线程中调用也要唤醒，否则下一次select会一直阻塞而不去执行task
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SelectableChannel channel, int ops, Connection connection) {
+            try {
+                SelectionKey key = channel.register(selector, ops, connection);
+                if (connection != null) connection.key = key;
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    closeQuietly(key.channel());
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (connection == null) {
+                    if (key.isAcceptable()) accept();
+                    return;
+                }
+                if (key.isReadable()) connection.read();
+                if (key.isValid() && key.isWritable()) connection.flush();
+            } catch (IOException | CancelledKeyException e) {
+                if (connection != null) connection.close();
+            }
+        }
+    }
+
+    /**
+     * 一个客户端连接，读取、切分、写出都在所属的事件循环中进行，命令在执行器中处理，响应通过output交给事件循环写出
+     */
+    private abstract class Connection {
+
+        final SocketChannel channel;
+        final EventLoop loop;
+        SelectionKey key;
+        volatile boolean inputClosed;           //客户端已经关闭了输出
+
+        private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+
+        Connection(SocketChannel channel, EventLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        /**
+         * 通道可读时在事件循环中调用
+         */
+        abstract void read() throws IOException;
+
+        /**
+         * @return 还有命令没有处理完
+         */
+        abstract boolean busy();
+
+        /**
+         * 客户端关闭了输出，在事件循环中调用
+         */
+        void endOfInput() {
+            inputClosed = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            closeIfDone();
+        }
+
+        /**
+         * 把一个响应交给事件循环写出，可以在任何线程中调用
+         */
+        void send(ByteBuffer response) {
+            output.add(response);
+            loop.execute(this::flushQuietly);
+        }
+
+        /**
+         * 暂停读取，在事件循环中调用
+         */
+        void suspend() {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+
+        /**
+         * 恢复读取，可以在任何线程中调用
+         */
+        void resume() {
+            loop.execute(() -> {
+                if (key.isValid() && !inputClosed) key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            });
+        }
+
+        /**
+         * 尽可能多的把响应写入通道，写不完时关注OP_WRITE，在事件循环中调用
+         */
+        void flush() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = output.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                output.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            closeIfDone();
+        }
+
+        private void flushQuietly() {
+            if (!key.isValid()) return;
+            try {
+                flush();
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        /**
+         * 客户端关闭了输出且所有的命令都处理完、响应都写完时关闭连接，在事件循环中调用
+         */
+        void closeIfDone() {
+            if (inputClosed && output.isEmpty() && !busy()) close();
+        }
+
+        void close() {
+            if (key != null) key.cancel();
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * 文本协议的连接，同一个连接中的命令在执行器中逐条处理，事件循环与执行器通过pending交接
+     */
+    private final class LineConnection extends Connection {
+
+        private final ByteBuffer input = ByteBuffer.allocate(8192);
+        private byte[] line = new byte[256];    //还没有读到行尾的一行
+        private int lineLength;
+
+        //以下三个字段由this保护
+        private final Queue<String> pending = new ArrayDeque<>();
+        private boolean running;                //执行器中正在处理这个连接的命令
+        private boolean suspended;              //积压过多，暂停了读取
+
+        LineConnection(SocketChannel channel, EventLoop loop) {
+            super(channel, loop);
+        }
+
+        @Override
+        void read() throws IOException {
+            int count = channel.read(input);
+            if (count == -1) {
+                if (lineLength != 0) submit();
+                endOfInput();
+                return;
+            }
+            input.flip();
+            while (input.hasRemaining()) {
+                byte b = input.get();
+                if (b == '\n') {
+                    submit();
+                    continue;
+                }
+                if (lineLength == maxLineLength) throw new IOException("line is longer than " + maxLineLength);
+                if (lineLength == line.length) line = Arrays.copyOf(line, Math.min(line.length * 2, maxLineLength));
+                line[lineLength++] = b;
+            }
+            input.clear();
+        }
+
+        @Override
+        synchronized boolean busy() {
+            return running || !pending.isEmpty();
+        }
+
+        /**
+         * 把读到的一行交给执行器，在事件循环中调用
+         */
+        private void submit() {
+            int length = lineLength;
+            if (length != 0 && line[length - 1] == '\r') length--;
+            String content = new String(line, 0, length, StandardCharsets.UTF_8);
+            lineLength = 0;
+            boolean start;
+            synchronized (this) {
+                pending.add(content);
+                start = !running;
+                running = true;
+                if (pending.size() >= MAX_PENDING && !suspended) {
+                    suspended = true;
+                    suspend();
+                }
+            }
+            if (start) executor.execute(this::drain);
+        }
+
+        /**
+         * 在执行器中依次处理积压的命令
+         */
+        private void drain() {
+            for (;;) {
+                String content;
+                boolean resume = false;
+                synchronized (this) {
+                    content = pending.poll();
+                    if (content == null) {
+                        running = false;
+                        break;
+                    }
+                    if (suspended && pending.size() <= MAX_PENDING / 2) {
+                        suspended = false;
+                        resume = true;
+                    }
+                }
+                if (resume) resume();
+                send(ByteBuffer.wrap(process(content)));
+            }
+            loop.execute(this::closeIfDone);
+        }
+
+        /**
+         * 处理一条命令并生成响应
+         */
+        private byte[] process(String content) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            boolean handled;
+            try {
+                handled = OutputRouter.capture(buffer, () -> analysable.process(content));
+            } catch (RuntimeException e) {
+                byte[] message = e.toString().getBytes(StandardCharsets.UTF_8);
+                buffer.write(message, 0, message.length);
+                handled = false;
+            }
+            byte[] response = buffer.toByteArray();
+            byte[] end = handled ? TRUE : FALSE;
+            boolean newline = response.length != 0 && response[response.length - 1] != '\n';
+            byte[] result = Arrays.copyOf(response, response.length + (newline ? 1 : 0) + end.length);
+            if (newline) result[response.length] = '\n';
+            System.arraycopy(end, 0, result, result.length - end.length, end.length);
+            return result;
+        }
+    }
+
+    /**
+     * 二进制协议的连接，见{@code FrameCodec}
+     * <p>
+     * 直接从通道读入借来的直接内存缓冲区，在缓冲区上解码出请求，命令以指向缓冲区的字符序列交给解析器，
+     * 每个正在处理的请求都持有缓冲区的一个引用，所有请求处理完且不再向其中读入时缓冲区才会回到池中
+     * 缓冲区尾部不完整的帧会被移到一个新的缓冲区的开头，这是唯一的一次复制
+     * <p>
+     * 请求之间互不等待，各自在执行器中处理，处理完就发送响应，一个连接中正在处理的请求达到{@code #MAX_IN_FLIGHT}个时暂停读取
+     */
+    private final class FrameConnection extends Connection {
+
+        private ByteBufferPool.Lease lease;     //当前读入的缓冲区，连接自己持有一个引用
+        private int parsed;                     //缓冲区中已经解码到的位置
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile boolean suspended;
+
+        FrameConnection(SocketChannel channel, EventLoop loop) {
+            super(channel, loop);
+            lease = pool.lease();
+        }
+
+        @Override
+        void read() throws IOException {
+            ByteBuffer buffer = lease.buffer();
+            int count = channel.read(buffer);
+            if (count == -1) {
+                endOfInput();
+                return;
+            }
+            int limit = buffer.position();
+            FrameCodec.Request request;
+            while ((request = FrameCodec.decodeRequest(buffer, parsed, limit)) != null) {
+                parsed += request.getFrameSize();
+                submit(request, lease.retain());
+            }
+            if (inFlight.get() >= MAX_IN_FLIGHT && !suspended) {
+                suspended = true;
+                suspend();
+                //可能在暂停之前最后的请求就已经处理完了
+                if (inFlight.get() < MAX_IN_FLIGHT / 2) {
+                    suspended = false;
+                    resume();
+                }
+            }
+            compact(limit);
+        }
+
+        /**
+         * 缓冲区中的帧都解码完了就从头开始使用(没有正在处理的请求时)或换一个新的缓冲区，
+         * 剩下不完整的帧且缓冲区放不下它时，把它移到一个足够大的新的缓冲区中
+         */
+        private void compact(int limit) throws IOException {
+            ByteBuffer buffer = lease.buffer();
+            int remaining = limit - parsed;
+            if (remaining == 0) {
+                if (lease.references() == 1) {
+                    buffer.clear();
+                } else {
+                    lease.release();
+                    lease = pool.lease();
+                }
+                parsed = 0;
+                return;
+            }
+            int size = FrameCodec.frameSize(buffer, parsed, limit, FrameCodec.REQUEST_HEADER_SIZE);
+            int needed = size == -1 ? FrameCodec.LENGTH_SIZE : size;
+            if (parsed + needed <= buffer.capacity()) return;
+            ByteBufferPool.Lease next = pool.lease(needed);
+            ByteBuffer target = next.buffer();
+            for (int i = parsed; i < limit; i++) {
+                target.put(buffer.get(i));
+            }
+            lease.release();
+            lease = next;
+            parsed = 0;
+        }
+
+        @Override
+        boolean busy() {
+            return inFlight.get() != 0;
+        }
+
+        @Override
+        void close() {
+            super.close();
+            if (lease != null) {
+                lease.release();
+                lease = null;
+            }
+        }
+
+        private void submit(FrameCodec.Request request, ByteBufferPool.Lease retained) {
+            inFlight.incrementAndGet();
+            long received = System.nanoTime();
+            executor.execute(() -> {
+                try {
+                    send(process(request, received));
+                } finally {
+                    retained.release();
+                    if (inFlight.decrementAndGet() < MAX_IN_FLIGHT / 2 && suspended) {
+                        suspended = false;
+                        resume();
+                    }
+                    if (inputClosed) loop.execute(this::closeIfDone);
+                }
+            });
+        }
+
+        /**
+         * 处理一个请求并生成响应帧
+         */
+        private ByteBuffer process(FrameCodec.Request request, long received) {
+            int timeout = request.getTimeoutMillis();
+            if (timeout != 0 && System.nanoTime() - received > TimeUnit.MILLISECONDS.toNanos(timeout)) {
+                return FrameCodec.encodeResponse(request.getId(), FrameCodec.EXPIRED, NO_OUTPUT, 0);
+            }
+            Output buffer = new Output();
+            byte status;
+            try {
+                boolean handled = OutputRouter.capture(buffer, () -> analysable.process(request.getCommand()));
+                status = handled ? FrameCodec.HANDLED : FrameCodec.UNHANDLED;
+            } catch (RuntimeException e) {
+                buffer.reset();
+                byte[] message = e.toString().getBytes(StandardCharsets.UTF_8);
+                buffer.write(message, 0, message.length);
+                status = FrameCodec.FAILED;
+            }
+            return FrameCodec.encodeResponse(request.getId(), status, buffer.bytes(), buffer.size());
+        }
+    }
+
+    /**
+     * 可以直接取出内部数组的ByteArrayOutputStream，省去一次复制
+     */
+    private static final class Output extends ByteArrayOutputStream {
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+}
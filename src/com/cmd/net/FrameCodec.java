@@ -0,0 +1,239 @@
+package com.cmd.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 命令服务端二进制协议的编解码，所有的整数都是大端序
+ * <pre>
+ * 请求帧 [int length][long requestId][int timeoutMillis][command...]
+ * 响应帧 [int length][long requestId][byte status][output...]
+ * </pre>
+ * length是length字段之后的字节数，command及output都是UTF-8编码的
+ * timeoutMillis是从服务端收到这一帧开始计算的期限，为0时没有期限，
+ * 过了期限还没有开始处理的命令不会再被处理，直接以{@code #EXPIRED}响应，已经开始处理的命令不会被打断
+ * <p>
+ * 每个请求都带有客户端自己分配的requestId，响应带着相同的requestId返回，
+ * 所以客户端可以在一个连接中连续发送大量请求而不必等待响应，响应的顺序与处理完成的顺序相同，与请求的顺序无关
+ * <p>
+ * 解码请求时命令部分不会被复制出来，只含有ASCII字符的命令以{@code AsciiSequence}的形式直接指向帧所在的缓冲区，
+ * 解析器在缓冲区上查找命令，处理函数真正需要参数时才会生成String，含有非ASCII字符的命令按UTF-8解码成String
+ *
+ * @version 1.0
+ */
+public final class FrameCodec {
+
+    //length字段的长度
+    public static final int LENGTH_SIZE = 4;
+    //请求帧length字段之后的固定部分的长度
+    public static final int REQUEST_HEADER_SIZE = 8 + 4;
+    //响应帧length字段之后的固定部分的长度
+    public static final int RESPONSE_HEADER_SIZE = 8 + 1;
+    //length字段的最大值
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    //响应的状态
+    public static final byte HANDLED = 0;       //处理成功
+    public static final byte UNHANDLED = 1;     //没有匹配到命令或没有处理函数处理成功
+    public static final byte EXPIRED = 2;       //开始处理之前就已经过了期限
+    public static final byte FAILED = 3;        //处理时抛出了异常，output中是异常信息
+
+    private FrameCodec() {
+    }
+
+    /**
+     * 读取position处的length字段，不改变buffer的position
+     * @param buffer 缓冲区
+     * @param position length字段所在的位置
+     * @param limit 有效内容的结尾
+     * @param headerSize 帧中length字段之后的固定部分的长度，length不能比它小
+     * @return 整个帧(包括length字段)的长度，不够读出length字段时返回-1
+     * @throws FrameException length字段不合法
+     */
+    public static int frameSize(ByteBuffer buffer, int position, int limit, int headerSize) throws FrameException {
+        if (limit - position < LENGTH_SIZE) return -1;
+        int length = buffer.getInt(position);
+        if (length < headerSize || length > MAX_FRAME_LENGTH) throw new FrameException("illegal frame length " + length);
+        return LENGTH_SIZE + length;
+    }
+
+    /**
+     * 从position处解码一个请求帧，不改变buffer的position及limit
+     * 返回的请求中的命令可能直接指向buffer，在命令处理完之前buffer中的这一段不能被修改
+     * @param buffer 缓冲区
+     * @param position 帧开始的位置
+     * @param limit 有效内容的结尾
+     * @return 解码出的请求，帧还不完整时返回null
+     * @throws FrameException 帧不合法
+     */
+    public static Request decodeRequest(ByteBuffer buffer, int position, int limit) throws FrameException {
+        int size = frameSize(buffer, position, limit, REQUEST_HEADER_SIZE);
+        if (size == -1 || limit - position < size) return null;
+        long id = buffer.getLong(position + LENGTH_SIZE);
+        int timeout = buffer.getInt(position + LENGTH_SIZE + 8);
+        if (timeout < 0) throw new FrameException("negative timeout " + timeout);
+        int start = position + LENGTH_SIZE + REQUEST_HEADER_SIZE;
+        int end = position + size;
+        return new Request(id, timeout, decodeCommand(buffer, start, end), size);
+    }
+
+    /**
+     * @return 只含有ASCII字符时返回指向buffer的字符序列，否则返回解码后的String
+     */
+    private static CharSequence decodeCommand(ByteBuffer buffer, int start, int end) {
+        int bits = 0;
+        for (int i = start; i < end; i++) {
+            bits |= buffer.get(i);
+        }
+        if (bits >= 0) return new AsciiSequence(buffer, start, end - start);
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 把一个请求帧写入buffer
+     * @param buffer 缓冲区，从position开始写入，需要有足够的剩余空间
+     * @param id 请求id
+     * @param timeoutMillis 期限，0为没有期限
+     * @param command UTF-8编码的命令
+     */
+    public static void encodeRequest(ByteBuffer buffer, long id, int timeoutMillis, byte[] command) {
+        buffer.putInt(REQUEST_HEADER_SIZE + command.length);
+        buffer.putLong(id);
+        buffer.putInt(timeoutMillis);
+        buffer.put(command);
+    }
+
+    /**
+     * @return 生成一个响应帧，position为0，limit为帧的结尾
+     */
+    public static ByteBuffer encodeResponse(long id, byte status, byte[] output, int outputLength) {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH_SIZE + RESPONSE_HEADER_SIZE + outputLength);
+        buffer.putInt(RESPONSE_HEADER_SIZE + outputLength);
+        buffer.putLong(id);
+        buffer.put(status);
+        buffer.put(output, 0, outputLength);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 从position处解码一个响应帧，不改变buffer的position及limit
+     * @return 解码出的响应，帧还不完整时返回null
+     * @throws FrameException 帧不合法
+     */
+    public static Response decodeResponse(ByteBuffer buffer, int position, int limit) throws FrameException {
+        int size = frameSize(buffer, position, limit, RESPONSE_HEADER_SIZE);
+        if (size == -1 || limit - position < size) return null;
+        long id = buffer.getLong(position + LENGTH_SIZE);
+        byte status = buffer.get(position + LENGTH_SIZE + 8);
+        byte[] output = new byte[size - LENGTH_SIZE - RESPONSE_HEADER_SIZE];
+        int start = position + LENGTH_SIZE + RESPONSE_HEADER_SIZE;
+        for (int i = 0; i < output.length; i++) {
+            output[i] = buffer.get(start + i);
+        }
+        return new Response(id, status, new String(output, StandardCharsets.UTF_8), size);
+    }
+
+    /**
+     * 解码出的请求帧
+     */
+    public static final class Request {
+
+        private final long id;
+        private final int timeoutMillis;
+        private final CharSequence command;
+        private final int frameSize;
+
+        Request(long id, int timeoutMillis, CharSequence command, int frameSize) {
+            this.id = id;
+            this.timeoutMillis = timeoutMillis;
+            this.command = command;
+            this.frameSize = frameSize;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return 期限，0为没有期限
+         */
+        public int getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        /**
+         * @return 命令，可能直接指向帧所在的缓冲区
+         */
+        public CharSequence getCommand() {
+            return command;
+        }
+
+        /**
+         * @return 整个帧(包括length字段)的长度
+         */
+        public int getFrameSize() {
+            return frameSize;
+        }
+    }
+
+    /**
+     * 解码出的响应帧
+     */
+    public static final class Response {
+
+        private final long id;
+        private final byte status;
+        private final String output;
+        private final int frameSize;
+
+        Response(long id, byte status, String output, int frameSize) {
+            this.id = id;
+            this.status = status;
+            this.output = output;
+            this.frameSize = frameSize;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return {@code #HANDLED}、{@code #UNHANDLED}、{@code #EXPIRED}或{@code #FAILED}
+         */
+        public byte getStatus() {
+            return status;
+        }
+
+        /**
+         * @return 处理函数的输出，处理失败时为异常信息
+         */
+        public String getOutput() {
+            return output;
+        }
+
+        /**
+         * @return 整个帧(包括length字段)的长度
+         */
+        public int getFrameSize() {
+            return frameSize;
+        }
+    }
+
+    /**
+     * 帧的格式不合法
+     */
+    public static class FrameException extends IOException {
+
+        private static final long serialVersionUID = 3526483095719548305L;
+
+        public FrameException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.cmd.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cmd.annotations.CommandName;
+import com.cmd.core.FastAnalyzer;
+
+/**
+ * 在同一个进程中启动一个包装着FastAnalyzer的服务端，通过本机回环地址压测它
+ * <ul>
+ * <li>frames(默认)：CommandServer使用二进制协议，调用者使用阻塞的{@code CommandClient#execute(String)}
+ * <li>http：CommandHttpServer，调用者通过HttpURLConnection发送POST请求，连接是keep-alive的，由JDK负责复用
+ * </ul>
+ * 分别以1、8、64个并发调用者发送请求，输出每秒完成的请求数
+ * 每一轮都会检查响应的内容，响应不对时抛出异常
+ * <pre>
+ * java com.cmd.net.LoopbackBenchmark [frames|http] [总请求数] [连接数]
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class LoopbackBenchmark {
+
+    private static final int[] CALLERS = {1, 8, 64};
+
+    public static void main(String[] args) throws Exception {
+        String transport = args.length > 0 ? args[0] : "frames";
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        FastAnalyzer analyzer = FastAnalyzer.handleWith(new LoopbackBenchmark());
+        InetSocketAddress local = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        if (transport.equals("http")) {
+            try (CommandHttpServer server = new CommandHttpServer(analyzer)) {
+                URL url = new URL("http", local.getHostString(), server.start(local).getPort(), CommandHttpServer.PATH);
+                benchmark("http", command -> post(url, command), requests);
+            }
+            return;
+        }
+        try (CommandServer server = new CommandServer(analyzer)) {
+            server.setProtocol(CommandServer.Protocol.FRAMES);
+            InetSocketAddress address = server.start(local);
+            try (CommandClient client = new CommandClient(address, connections)) {
+                benchmark("frames", command -> {
+                    FrameCodec.Response response = client.execute(command);
+                    return response.getStatus() == FrameCodec.HANDLED ? response.getOutput() : null;
+                }, requests);
+            }
+        }
+    }
+
+    private static void benchmark(String transport, Caller caller, int requests) throws Exception {
+        //预热
+        run(caller, 8, requests / 32);
+        for (int callers : CALLERS) {
+            int perCaller = Math.max(1, requests / callers);
+            long nanos = run(caller, callers, perCaller);
+            long total = (long) callers * perCaller;
+            System.out.printf("%s %2d callers: %d requests in %d ms, %d requests/s%n",
+                    transport, callers, total, nanos / 1000000, (long) (total * 1e9 / nanos));
+        }
+    }
+
+    /**
+     * 通过HTTP发送一条命令，读完整个响应以便连接被复用
+     * @return 命令的输出，没有处理成功返回null
+     */
+    private static String post(URL url, String command) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(command.getBytes(StandardCharsets.UTF_8));
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[256];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                body.write(buffer, 0, count);
+            }
+        }
+        String response = new String(body.toByteArray(), StandardCharsets.UTF_8);
+        String handled = "\n" + CommandServer.END_OF_RESPONSE + "true\n";
+        if (!response.endsWith(handled)) return null;
+        return response.substring(0, response.length() - handled.length());
+    }
+
+    /**
+     * @return callers个线程各自阻塞的发送perCaller个请求所用的时间(纳秒)
+     */
+    private static long run(Caller caller, int callers, int perCaller) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(callers);
+        AtomicLong failures = new AtomicLong();
+        for (int i = 0; i < callers; i++) {
+            int index = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < perCaller; j++) {
+                        String output = caller.call("add " + index + " " + j);
+                        if (!String.valueOf(index + j).equals(output)) failures.incrementAndGet();
+                    }
+                } catch (InterruptedException | IOException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long nanos = System.nanoTime() - begin;
+        if (failures.get() != 0) throw new IllegalStateException(failures.get() + " requests failed");
+        return nanos;
+    }
+
+    @CommandName
+    public void add(int a, int b) {
+        System.out.print(a + b);
+    }
+
+    /**
+     * 以某种方式发送一条命令并等待响应
+     */
+    private interface Caller {
+
+        /**
+         * @return 命令的输出，没有处理成功返回null
+         */
+        String call(String command) throws IOException;
+    }
+}
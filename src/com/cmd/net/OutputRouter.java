@@ -0,0 +1,244 @@
+package com.cmd.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.function.Supplier;
+
+/**
+ * 处理函数一般通过System.out输出结果，但在服务端同时处理着多个连接的命令，每个连接的输出需要送回到各自的连接中
+ * <p>
+ * {@code #install()}把System.out替换成一个按线程分流的PrintStream，
+ * 在{@code #capture(OutputStream, Supplier)}中执行的代码向System.out输出的内容以UTF-8编码写入指定的OutputStream，
+ * 其他线程(或capture之外)的输出照常交给安装前的System.out的print/println，使用它自己的编码，
+ * 安装前的System.out是CommandWindow重定向的输出流时这些输出仍然显示在窗口中
+ * <p>
+ * install与{@code #uninstall()}是成对调用的，最后一次uninstall时恢复安装前的System.out
+ * 安装之后System.out又被替换(如创建了CommandWindow)时，下一次capture会在新的System.out之上重新安装，
+ * 最后一次uninstall时恢复的是被替换后的那个
+ * <p>
+ * 分流是按线程进行的，所以处理函数中另起线程输出的内容不会被捕获
+ *
+ * @version 1.1
+ */
+public final class OutputRouter {
+
+    //当前线程的输出目标，没有时写入安装前的System.out
+    private static final ThreadLocal<OutputStream> target = new ThreadLocal<>();
+    private static volatile PrintStream installed;
+    //安装前的System.out
+    private static PrintStream previous;
+    //install的次数减去uninstall的次数
+    private static int installs;
+
+    private OutputRouter() {
+    }
+
+    /**
+     * 把System.out替换成按线程分流的输出流，已经安装过且System.out没有被再次替换时只增加计数
+     */
+    public static synchronized void install() {
+        installs++;
+        reinstall();
+    }
+
+    /**
+     * 与{@code #install()}配对调用，最后一次调用时如果System.out仍然是安装的分流输出流就恢复安装前的System.out
+     */
+    public static synchronized void uninstall() {
+        if (installs == 0) throw new IllegalStateException("OutputRouter is not installed");
+        if (--installs > 0) return;
+        if (System.out == installed) System.setOut(previous);
+        installed = null;
+        previous = null;
+    }
+
+    private static void reinstall() {
+        if (installed != null && System.out == installed) return;
+        previous = System.out;
+        try {
+            installed = new RoutingPrintStream(previous);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+        System.setOut(installed);
+    }
+
+    /**
+     * 在当前线程中执行action，期间当前线程向System.out的输出都写入out，需要先调用{@code #install()}
+     * @param out 输出目标
+     * @param action 要执行的动作
+     * @return action的返回值
+     */
+    public static <T> T capture(OutputStream out, Supplier<T> action) {
+        PrintStream routing = installed;
+        if (routing != null && System.out != routing) {
+            synchronized (OutputRouter.class) {
+                if (installs > 0) reinstall();
+            }
+        }
+        OutputStream previous = target.get();
+        target.set(out);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) target.remove();
+            else target.set(previous);
+        }
+    }
+
+    /**
+     * 按照当前线程的输出目标分流的PrintStream
+     * 有输出目标时由PrintStream本身以UTF-8编码写入RoutingStream，
+     * 没有时把文字原样交给fallback的print/println，由它按自己的方式编码或显示
+     */
+    private static final class RoutingPrintStream extends PrintStream {
+
+        private final PrintStream fallback;
+
+        RoutingPrintStream(PrintStream fallback) throws UnsupportedEncodingException {
+            super(new RoutingStream(fallback), true, "UTF-8");
+            this.fallback = fallback;
+        }
+
+        private void text(String s) {
+            if (target.get() == null) fallback.print(s);
+            else super.print(s);
+        }
+
+        private void line(String s) {
+            if (target.get() == null) fallback.println(s);
+            else super.println(s);
+        }
+
+        @Override
+        public void print(boolean b) {
+            text(String.valueOf(b));
+        }
+
+        @Override
+        public void print(char c) {
+            text(String.valueOf(c));
+        }
+
+        @Override
+        public void print(int i) {
+            text(String.valueOf(i));
+        }
+
+        @Override
+        public void print(long l) {
+            text(String.valueOf(l));
+        }
+
+        @Override
+        public void print(float f) {
+            text(String.valueOf(f));
+        }
+
+        @Override
+        public void print(double d) {
+            text(String.valueOf(d));
+        }
+
+        @Override
+        public void print(char[] s) {
+            text(new String(s));
+        }
+
+        @Override
+        public void print(String s) {
+            text(String.valueOf(s));
+        }
+
+        @Override
+        public void print(Object obj) {
+            text(String.valueOf(obj));
+        }
+
+        @Override
+        public void println() {
+            if (target.get() == null) fallback.println();
+            else super.println();
+        }
+
+        @Override
+        public void println(boolean x) {
+            line(String.valueOf(x));
+        }
+
+        @Override
+        public void println(char x) {
+            line(String.valueOf(x));
+        }
+
+        @Override
+        public void println(int x) {
+            line(String.valueOf(x));
+        }
+
+        @Override
+        public void println(long x) {
+            line(String.valueOf(x));
+        }
+
+        @Override
+        public void println(float x) {
+            line(String.valueOf(x));
+        }
+
+        @Override
+        public void println(double x) {
+            line(String.valueOf(x));
+        }
+
+        @Override
+        public void println(char[] x) {
+            line(new String(x));
+        }
+
+        @Override
+        public void println(String x) {
+            line(String.valueOf(x));
+        }
+
+        @Override
+        public void println(Object x) {
+            line(String.valueOf(x));
+        }
+    }
+
+    /**
+     * 按照当前线程的输出目标分流的字节流
+     */
+    private static final class RoutingStream extends OutputStream {
+
+        private final PrintStream fallback;
+
+        RoutingStream(PrintStream fallback) {
+            this.fallback = fallback;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            OutputStream out = target.get();
+            if (out == null) fallback.write(b);
+            else out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            OutputStream out = target.get();
+            if (out == null) fallback.write(b, off, len);
+            else out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            OutputStream out = target.get();
+            if (out == null) fallback.flush();
+            else out.flush();
+        }
+    }
+}
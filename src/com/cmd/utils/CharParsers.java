@@ -0,0 +1,227 @@
+package com.cmd.utils;
+
+/**
+ * 直接在字符序列的某一段上解析基本数据类型，不抛出异常
+ * <p>
+ * jdk提供的parseInt等函数在遇到非法输入时会抛出NumberFormatException，用户输错一个参数的代价
+ * 就是一次异常的构造与栈回溯，比正确输入慢上百倍，所以这里把解析分成两步
+ * <ul>
+ * <li>{@code isXxx}检查某一段字符能否被解析成对应的类型，只做一次扫描，不会创建任何对象
+ * <li>{@code parseXxx}解析已经确定合法的字符，对非法输入的行为是未定义的
+ * </ul>
+ * 整数的解析完全在字符上完成，没有中间对象；浮点数在检查过格式之后交给jdk完成舍入
+ * BigInteger、BigDecimal只提供检查，检查通过后可以放心的交给它们的构造函数
+ *
+ * @version 1.1
+ */
+public final class CharParsers {
+
+    private CharParsers() {
+    }
+
+    public static boolean isBoolean(CharSequence s, int start, int end) {
+        return regionEquals(s, start, end, "true") || regionEquals(s, start, end, "false");
+    }
+
+    public static boolean isChar(CharSequence s, int start, int end) {
+        return start < end;
+    }
+
+    public static boolean isByte(CharSequence s, int start, int end) {
+        return isInteger(s, start, end, Byte.MIN_VALUE, Byte.MAX_VALUE);
+    }
+
+    public static boolean isShort(CharSequence s, int start, int end) {
+        return isInteger(s, start, end, Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    public static boolean isInt(CharSequence s, int start, int end) {
+        return isInteger(s, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    public static boolean isLong(CharSequence s, int start, int end) {
+        return isInteger(s, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * 检查是否为十进制的浮点数，格式为[+-](数字[.数字] | .数字)[(e|E)[+-]数字][fFdD]，以及NaN、Infinity
+     * 与Double.parseDouble相比不接受十六进制浮点数及首尾的空白
+     */
+    public static boolean isDouble(CharSequence s, int start, int end) {
+        if (start >= end) return false;
+        int i = start;
+        char c = s.charAt(i);
+        if (c == '+' || c == '-') {
+            if (++i == end) return false;
+        }
+        if (regionEquals(s, i, end, "NaN") || regionEquals(s, i, end, "Infinity")) return true;
+        int digits = 0;
+        while (i < end && isDigit(s.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && s.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(s.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) return false;
+        if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
+            int exponent = 0;
+            while (i < end && isDigit(s.charAt(i))) {
+                i++;
+                exponent++;
+            }
+            if (exponent == 0) return false;
+        }
+        if (i < end) {
+            c = s.charAt(i);
+            if (c == 'f' || c == 'F' || c == 'd' || c == 'D') i++;
+        }
+        return i == end;
+    }
+
+    public static boolean isFloat(CharSequence s, int start, int end) {
+        return isDouble(s, start, end);
+    }
+
+    /**
+     * 检查是否为任意长度的十进制整数，格式为[+-]数字，可以交给BigInteger解析
+     */
+    public static boolean isBigInteger(CharSequence s, int start, int end) {
+        int i = skipSign(s, start, end);
+        if (i == end) return false;
+        for (; i < end; i++) {
+            if (!isDigit(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 检查是否为任意精度的十进制小数，格式为[+-](数字[.数字] | .数字)[(e|E)[+-]数字]，可以交给BigDecimal解析
+     * 指数部分最多9位，保证不会超出int的范围
+     */
+    public static boolean isBigDecimal(CharSequence s, int start, int end) {
+        int i = skipSign(s, start, end);
+        int digits = 0;
+        while (i < end && isDigit(s.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && s.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(s.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) return false;
+        if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i = skipSign(s, i + 1, end);
+            int exponent = 0;
+            while (i < end && isDigit(s.charAt(i))) {
+                i++;
+                exponent++;
+            }
+            if (exponent == 0 || exponent > 9) return false;
+        }
+        return i == end;
+    }
+
+    public static boolean parseBoolean(CharSequence s) {
+        return regionEquals(s, 0, s.length(), "true");
+    }
+
+    public static char parseChar(CharSequence s) {
+        return s.charAt(0);
+    }
+
+    public static byte parseByte(CharSequence s) {
+        return (byte) parseLong(s, 0, s.length());
+    }
+
+    public static short parseShort(CharSequence s) {
+        return (short) parseLong(s, 0, s.length());
+    }
+
+    public static int parseInt(CharSequence s) {
+        return (int) parseLong(s, 0, s.length());
+    }
+
+    public static long parseLong(CharSequence s) {
+        return parseLong(s, 0, s.length());
+    }
+
+    public static float parseFloat(CharSequence s) {
+        return Float.parseFloat(s.toString());
+    }
+
+    public static double parseDouble(CharSequence s) {
+        return Double.parseDouble(s.toString());
+    }
+
+    /**
+     * 解析已经通过{@code #isLong(CharSequence, int, int)}等函数检查过的整数
+     */
+    public static long parseLong(CharSequence s, int start, int end) {
+        int i = start;
+        boolean negative = s.charAt(i) == '-';
+        if (negative || s.charAt(i) == '+') i++;
+        //与jdk一样用负数累加，这样Long.MIN_VALUE也不会溢出
+        long result = 0;
+        for (; i < end; i++) {
+            result = result * 10 - (s.charAt(i) - '0');
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * @return s中start到end之间是否为[min, max]范围内的十进制整数
+     */
+    private static boolean isInteger(CharSequence s, int start, int end, long min, long max) {
+        if (start >= end) return false;
+        int i = start;
+        char first = s.charAt(i);
+        boolean negative = first == '-';
+        if (negative || first == '+') {
+            if (++i == end) return false;
+        }
+        long limit = negative ? min : -max;
+        long multmin = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) return false;
+            int digit = c - '0';
+            if (result < multmin) return false;
+            result *= 10;
+            if (result < limit + digit) return false;
+            result -= digit;
+        }
+        return true;
+    }
+
+    /**
+     * @return 跳过开头的正负号之后的位置
+     */
+    private static int skipSign(CharSequence s, int start, int end) {
+        if (start < end && (s.charAt(start) == '+' || s.charAt(start) == '-')) return start + 1;
+        return start;
+    }
+
+    public static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    public static boolean regionEquals(CharSequence s, int start, int end, String target) {
+        if (end - start != target.length()) return false;
+        for (int i = 0; i < target.length(); i++) {
+            if (s.charAt(start + i) != target.charAt(i)) return false;
+        }
+        return true;
+    }
+}
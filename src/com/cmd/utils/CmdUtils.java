@@ -26,9 +26,11 @@ public class CmdUtils {
 
     /**
      * 分析这个String是否为ec数组中所包含的待转义的字符，如果是就给他转义喽
+     * 命令分析已经不再使用正则表达式，分隔符不需要再转义，保留此函数仅为兼容
      * @param content 待检查String
      * @return 转义后的ch
      */
+    @Deprecated
     public static String characterEscape(String content) {
         for (String string : ec) {
         	if(content.contains(string)) {
@@ -72,18 +74,18 @@ public class CmdUtils {
      * 判断命令是否以给定的单词开始
      * @param beginWord 给定的开始单词
      * @param command 命令语句
-     * @param delimiter 分隔符，如果不为null则判断command中从0到分隔符之前的内容是不是beginWord，否则直接判断
+     * @param delimiter 分隔符，如果不为null则判断command中beginWord之后是否紧跟分隔符，否则直接判断
+     *                  分隔符按字面意思匹配，不需要转义
      * @return 以给定的单词开始返回true
      */
     public static boolean isBeginWith(String beginWord, String command, String delimiter) {
-        if (beginWord.length() > command.length()) {
+        if (!command.startsWith(beginWord)) {
             return false;
         }
-        if (command.equals(beginWord)) {
+        if (delimiter == null || command.length() == beginWord.length()) {
             return true;
         }
-        return delimiter == null ? command.substring(0, beginWord.length()).equals(beginWord)
-                : command.split(delimiter)[0].equals(beginWord);
+        return command.startsWith(delimiter, beginWord.length());
     }
 
     /**
@@ -118,57 +120,36 @@ public class CmdUtils {
         return org.replace(simple, split[split.length - 1]);
     }
 
-    /*******************************************************************
-     * 这一大段是一个算法，实现通过一个字符来分割字符串的功能
-     * java提供的split函数在这种情况下效率低到令人发指，于是手写了递归版分割算法
-     * 返回被分割出来的数组
-     */
-    private static String[] result = null;  //用于保存分割的结果
-    private static char[] content = null;   //待分割的字符串的char数组
-    private static char delimiter = 0;         //分隔符
-    private static int end = 0;             //对content字串分析的结束位置
-
-    /**
-     * 整个函数对静态变量content做分析，当函数运行结束，结果保存在result数组中
-     * @param start 从content的哪一个位置开始分析
-     * @param putIndex 将查找出来的内容放到result数组中的哪一个位置
-     */
-    private static void split(int start,int putIndex) {
-        //处理分隔符在末尾的情况
-        if(start >= end){
-            result = new String[putIndex];
-            return;
-        }
-        //寻找分隔符，如果找到的话先让分割符后面的内容继续去寻找新的分隔符位置
-        //再把自分隔符前面的内容放入result数组
-        for (int i = start; i < end; i++) {
-            if (content[i] == delimiter) {
-                split(i + 1,putIndex + 1);
-                result[putIndex] = new String(content, start, i - start);
-                return;
-            }
-        }
-        //到达了字串的末尾仍然没有找到分隔符，那可以向上层返回了
-        result = new String[putIndex + 1];
-        result[putIndex] = new String(content, start, end - start);
-    }
-
     /**
-     * 真正可以提供给用户用的字串分割函数，通过一个char来分割字串
-     * 实现依赖private的重载子函数，递归分割
+     * 通过一个字符来分割字串，java提供的split函数在这种情况下效率低到令人发指，于是手写了分割算法
+     * 先扫描一遍统计段数，再扫描一遍生成结果，不递归也不依赖任何静态变量，可以被多个线程同时调用
+     * 连续的分隔符之间会产生空串，但最后一个分隔符之后如果没有内容，不会产生空串
+     * 如果只想得到每一段的位置而不想立即生成String，请使用{@code Tokens}
      * @param content 要被分割的字串的char数组
      * @param start 起始位置
      * @param delimiter 分隔符
      * @return 分割后的内容的数组 与jdk的split函数返回一样
      */
     public static String[] split(char[] content, int start, char delimiter) {
-        if (content.length == 1 && content[0] == delimiter) {
+        int end = content.length;
+        if (start >= end || (end == 1 && content[0] == delimiter)) {
             return new String[0];
         }
-        CmdUtils.content = content;
-        CmdUtils.delimiter = delimiter;
-        CmdUtils.end = content.length;
-        split(start, 0);
+        //统计段数，最后一个分隔符之后没有内容时不算作一段
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (content[i] == delimiter) count++;
+        }
+        if (content[end - 1] == delimiter) count--;
+        String[] result = new String[count];
+        int tokenStart = start, index = 0;
+        for (int i = start; i < end; i++) {
+            if (content[i] == delimiter) {
+                result[index++] = new String(content, tokenStart, i - tokenStart);
+                tokenStart = i + 1;
+            }
+        }
+        if (tokenStart < end) result[index] = new String(content, tokenStart, end - tokenStart);
         return result;
     }
 
@@ -179,8 +160,6 @@ public class CmdUtils {
      * @return 分割后的内容的数组 与jdk的split函数返回一样
      */
     public static String[] split(char[] content, char delimiter) {
-        split(content, 0, delimiter);
-        return result;
+        return split(content, 0, delimiter);
     }
-    //******************************************************************
 }
\ No newline at end of file
@@ -0,0 +1,123 @@
+package com.cmd.utils;
+
+/**
+ * 比较几种按单个字符分割字串的方式，输入是由1到100000个以空格分隔的段组成的字串
+ * <ul>
+ * <li>Tokens：复用同一个Tokens对象，只记录每一段的位置
+ * <li>Tokens+toArray：在上面的基础上生成所有段的String
+ * <li>CmdUtils：{@code CmdUtils#split(char[], int, char)}，两遍扫描的非递归实现
+ * <li>recursive：原来每一段占用一层栈帧、依赖静态变量的递归实现，段数多时会栈溢出
+ * <li>String.split：jdk提供的split
+ * </ul>
+ * 每种方式先预热再计时，输出分割出每一段的平均纳秒数，同时检查各种方式分割出的段数一致
+ * <pre>
+ * java com.cmd.utils.TokenizerBenchmark [每种输入计时时处理的总段数]
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class TokenizerBenchmark {
+
+    private static final int[] SIZES = {1, 10, 100, 1000, 10000, 100000};
+
+    private static int sink;
+
+    public static void main(String[] args) {
+        int budget = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        Tokens tokens = new Tokens();
+        for (int size : SIZES) {
+            String content = input(size);
+            char[] chars = content.toCharArray();
+            int repeat = Math.max(1, budget / size);
+            StringBuilder line = new StringBuilder(String.format("%6d tokens:", size));
+            line.append(measure("Tokens", () -> tokens.split(content, 0, ' '), size, repeat));
+            line.append(measure("Tokens+toArray", () -> {
+                tokens.split(content, 0, ' ');
+                return tokens.toArray().length;
+            }, size, repeat));
+            line.append(measure("CmdUtils", () -> CmdUtils.split(chars, 0, ' ').length, size, repeat));
+            line.append(measure("recursive", () -> RecursiveSplit.split(chars, 0, ' ').length, size, repeat));
+            line.append(measure("String.split", () -> content.split(" ").length, size, repeat));
+            System.out.println(line);
+        }
+    }
+
+    private static String input(int size) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) builder.append(' ');
+            builder.append('t').append(i);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return 这种方式的结果，栈溢出时给出说明而不是耗时
+     */
+    private static String measure(String name, Split split, int size, int repeat) {
+        try {
+            //预热
+            run(split, size, repeat);
+            long nanos = run(split, size, repeat);
+            return String.format("  %s %.2f ns/token", name, (double) nanos / repeat / size);
+        } catch (StackOverflowError e) {
+            return String.format("  %s StackOverflowError", name);
+        }
+    }
+
+    private static long run(Split split, int size, int repeat) {
+        long start = System.nanoTime();
+        for (int i = 0; i < repeat; i++) {
+            int count = split.split();
+            if (count != size) throw new IllegalStateException("expected " + size + " tokens but got " + count);
+            sink += count;
+        }
+        return System.nanoTime() - start;
+    }
+
+    private interface Split {
+        int split();
+    }
+
+    /**
+     * 原来的CmdUtils中的递归分割算法，原样保留在这里仅用于对比
+     */
+    private static final class RecursiveSplit {
+
+        private static String[] result = null;  //用于保存分割的结果
+        private static char[] content = null;   //待分割的字符串的char数组
+        private static char delimiter = 0;      //分隔符
+        private static int end = 0;             //对content字串分析的结束位置
+
+        private static void split(int start, int putIndex) {
+            //处理分隔符在末尾的情况
+            if (start >= end) {
+                result = new String[putIndex];
+                return;
+            }
+            //寻找分隔符，如果找到的话先让分割符后面的内容继续去寻找新的分隔符位置
+            //再把自分隔符前面的内容放入result数组
+            for (int i = start; i < end; i++) {
+                if (content[i] == delimiter) {
+                    split(i + 1, putIndex + 1);
+                    result[putIndex] = new String(content, start, i - start);
+                    return;
+                }
+            }
+            //到达了字串的末尾仍然没有找到分隔符，那可以向上层返回了
+            result = new String[putIndex + 1];
+            result[putIndex] = new String(content, start, end - start);
+        }
+
+        static String[] split(char[] content, int start, char delimiter) {
+            if (content.length == 1 && content[0] == delimiter) {
+                return new String[0];
+            }
+            RecursiveSplit.content = content;
+            RecursiveSplit.delimiter = delimiter;
+            RecursiveSplit.end = content.length;
+            split(start, 0);
+            return result;
+        }
+    }
+}
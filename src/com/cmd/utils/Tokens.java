@@ -0,0 +1,327 @@
+package com.cmd.utils;
+
+import java.util.Arrays;
+
+/**
+ * 可重复使用的分词结果，分割字符串时只记录每一段的起止位置，并不立即生成String
+ * 只有调用{@code #get(int)}或{@code #toArray()}时才会真正创建String对象
+ * <p>
+ * 起止位置成对的保存在一个int数组中，数组只会在不够用时扩容，所以同一个Tokens对象反复使用时
+ * 不会产生额外的对象，适合在每个线程中各持有一个，Tokens本身不是线程安全的
+ * <p>
+ * 分割规则与{@code CmdUtils#split(char[], int, char)}保持一致：
+ * 连续的分隔符之间会产生空串，但最后一个分隔符之后如果没有内容，不会产生空串
+ * <p>
+ * 通过字符串分隔符分割时({@code #split(CharSequence, int, String)})还支持引号，规则如下
+ * <ul>
+ * <li>以双引号开头、以双引号结尾且结尾的引号后紧跟分隔符或字串结尾的一段被当做一个整体，其中的分隔符不再起作用
+ * <li>引号内可以用\"表示一个双引号，用\\表示一个反斜杠，其他的反斜杠保持原样
+ * <li>不符合上面条件的引号及反斜杠都被当做普通字符
+ * </ul>
+ * 整个分割过程是一个从左到右扫描的状态机，不使用正则表达式，对于给定的分隔符耗时与字串长度成正比
+ *
+ * @version 1.1
+ */
+public class Tokens {
+
+    private static final int INIT_CAPACITY = 8;
+
+    public static final char QUOTE = '"';
+    public static final char ESCAPE = '\\';
+
+    private CharSequence source;        //被分割的字串
+    private int[] offsets;              //第i段的起止位置分别保存在offsets[2i]、offsets[2i+1]中
+    private String[] unescaped;         //含有转义字符的段去掉转义后的内容，其他段为null
+    private int count;                  //分割出来的段数
+
+    public Tokens() {
+        offsets = new int[INIT_CAPACITY * 2];
+        unescaped = new String[INIT_CAPACITY];
+    }
+
+    /**
+     * 从start开始通过一个字符分割content，上一次分割的结果会被清空
+     * 整个过程是一次从左到右的扫描，不会递归，也不会创建任何对象(除非需要扩容)
+     * @param content 被分割的字串
+     * @param start 起始位置
+     * @param delimiter 分隔符
+     * @return 分割出来的段数
+     */
+    public int split(CharSequence content, int start, char delimiter) {
+        source = content;
+        count = 0;
+        int end = content.length();
+        int tokenStart = start;
+        for (int i = start; i < end; i++) {
+            if (content.charAt(i) == delimiter) {
+                add(tokenStart, i);
+                tokenStart = i + 1;
+            }
+        }
+        //最后一个分隔符之后还有内容
+        if (tokenStart < end) add(tokenStart, end);
+        return count;
+    }
+
+    /**
+     * 从start开始通过字符串delimiter分割content，支持引号及引号内的转义，上一次分割的结果会被清空
+     * 除了含有转义字符的段外，不会创建任何对象(除非需要扩容)
+     * @param content 被分割的字串
+     * @param start 起始位置
+     * @param delimiter 分隔符，长度至少为1
+     * @return 分割出来的段数
+     */
+    public int split(CharSequence content, int start, String delimiter) {
+        source = content;
+        count = 0;
+        int end = content.length();
+        int delimiterLen = delimiter.length();
+        int i = start;
+        while (i < end) {
+            //以引号开头的一段
+            if (content.charAt(i) == QUOTE && quoted(content, i, end, delimiter)) {
+                i = offsets[count * 2 - 1] + 1;
+                if (i == end) return count;
+                i += delimiterLen;
+                continue;
+            }
+            //普通的一段，寻找下一个分隔符
+            int next = indexOf(content, delimiter, i, end);
+            if (next == -1) {
+                add(i, end);
+                return count;
+            }
+            add(i, next);
+            i = next + delimiterLen;
+        }
+        return count;
+    }
+
+    /**
+     * 从start开始通过字符串separator分割content，成对的引号内的分隔符不起作用，上一次分割的结果会被清空
+     * 与{@code #split(CharSequence, int, String)}不同，分割出来的每一段保持原样，引号及转义字符都不会被去掉，
+     * 空的段也不会被记录，适合把一行中的多条命令分开后再逐条交给解析器
+     * 没有配对的引号被当做普通字符，它之后的引号也不再配对
+     * @param content 被分割的字串
+     * @param start 起始位置
+     * @param separator 分隔符，长度至少为1
+     * @return 分割出来的段数
+     */
+    public int splitOutsideQuotes(CharSequence content, int start, String separator) {
+        source = content;
+        count = 0;
+        int end = content.length();
+        int separatorLen = separator.length();
+        char first = separator.charAt(0);
+        boolean unpaired = false;
+        int tokenStart = start;
+        for (int i = start; i < end; i++) {
+            char c = content.charAt(i);
+            if (c == QUOTE && !unpaired) {
+                int close = closingQuote(content, i, end);
+                if (close != -1) {
+                    i = close;
+                    continue;
+                }
+                unpaired = true;
+            }
+            if (c == first && regionMatches(content, i, separator)) {
+                if (tokenStart < i) add(tokenStart, i);
+                tokenStart = i + separatorLen;
+                i = tokenStart - 1;
+            }
+        }
+        if (tokenStart < end) add(tokenStart, end);
+        return count;
+    }
+
+    /**
+     * @return 与quote处的引号配对的引号的位置，引号内的\"不算，找不到返回-1
+     */
+    private static int closingQuote(CharSequence content, int quote, int end) {
+        for (int i = quote + 1; i < end; i++) {
+            char c = content.charAt(i);
+            if (c == ESCAPE && i + 1 < end) {
+                char next = content.charAt(i + 1);
+                if (next == QUOTE || next == ESCAPE) i++;
+            } else if (c == QUOTE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 尝试将从quote开始的内容当做一个被引号括起来的段来分析，成功的话这一段会被追加到结果中
+     * @param content
+     * @param quote 开头的引号的位置
+     * @param end
+     * @param delimiter
+     * @return 找到了配对的引号且其后紧跟分隔符或字串结尾返回true
+     */
+    private boolean quoted(CharSequence content, int quote, int end, String delimiter) {
+        boolean escaped = false;
+        for (int i = quote + 1; i < end; i++) {
+            char c = content.charAt(i);
+            if (c == ESCAPE && i + 1 < end) {
+                char next = content.charAt(i + 1);
+                if (next == QUOTE || next == ESCAPE) {
+                    escaped = true;
+                    i++;
+                }
+                continue;
+            }
+            if (c != QUOTE) continue;
+            //引号后面必须是分隔符或结尾，否则这个引号不起作用
+            if (i + 1 != end && !regionMatches(content, i + 1, delimiter)) return false;
+            add(quote + 1, i);
+            if (escaped) unescaped[count - 1] = unescape(content, quote + 1, i);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return 去掉start到end之间的转义字符后的内容
+     */
+    private static String unescape(CharSequence content, int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = content.charAt(i);
+            if (c == ESCAPE && i + 1 < end) {
+                char next = content.charAt(i + 1);
+                if (next == QUOTE || next == ESCAPE) {
+                    builder.append(next);
+                    i++;
+                    continue;
+                }
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return 在content的[from, end)范围内寻找target第一次出现的位置，找不到返回-1
+     */
+    public static int indexOf(CharSequence content, String target, int from, int end) {
+        char first = target.charAt(0);
+        int last = end - target.length();
+        for (int i = from; i <= last; i++) {
+            if (content.charAt(i) == first && regionMatches(content, i, target)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return content从offset开始的内容是否与target相同
+     */
+    public static boolean regionMatches(CharSequence content, int offset, String target) {
+        int len = target.length();
+        if (offset < 0 || offset + len > content.length()) return false;
+        for (int i = 0; i < len; i++) {
+            if (content.charAt(offset + i) != target.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 追加一段，供其他分词算法使用
+     * @param source 被分割的字串，必须与之前追加的段所属的字串相同
+     * @param start 这一段的起始位置
+     * @param end 这一段的结束位置(不包含)
+     */
+    public void add(CharSequence source, int start, int end) {
+        this.source = source;
+        add(start, end);
+    }
+
+    private void add(int start, int end) {
+        int index = count * 2;
+        if (index == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            unescaped = Arrays.copyOf(unescaped, unescaped.length * 2);
+        }
+        offsets[index] = start;
+        offsets[index + 1] = end;
+        unescaped[count] = null;
+        count++;
+    }
+
+    /**
+     * 清空分割结果，但保留已经分配的空间
+     */
+    public void clear() {
+        source = null;
+        for (int i = 0; i < count; i++) unescaped[i] = null;
+        count = 0;
+    }
+
+    /**
+     * @return 分割出来的段数
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param index
+     * @return 第index段在字串中的起始位置
+     */
+    public int start(int index) {
+        checkIndex(index);
+        return offsets[index * 2];
+    }
+
+    /**
+     * @param index
+     * @return 第index段在字串中的结束位置(不包含)
+     */
+    public int end(int index) {
+        checkIndex(index);
+        return offsets[index * 2 + 1];
+    }
+
+    /**
+     * @return 被分割的字串
+     */
+    public CharSequence source() {
+        return source;
+    }
+
+    /**
+     * @param index
+     * @return 第index段中是否含有转义字符，含有转义字符的段不能直接通过起止位置读取内容
+     */
+    public boolean isEscaped(int index) {
+        checkIndex(index);
+        return unescaped[index] != null;
+    }
+
+    /**
+     * @param index
+     * @return 第index段的内容(已去掉引号及转义字符)，每次调用都会创建新的String
+     */
+    public String get(int index) {
+        checkIndex(index);
+        if (unescaped[index] != null) return unescaped[index];
+        return source.subSequence(offsets[index * 2], offsets[index * 2 + 1]).toString();
+    }
+
+    /**
+     * @return 所有段的内容组成的数组，与jdk的split函数返回的形式一样
+     */
+    public String[] toArray() {
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = get(i);
+        }
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+    }
+}